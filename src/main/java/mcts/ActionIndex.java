@@ -0,0 +1,64 @@
+package mcts;
+
+import java.util.Arrays;
+
+// Positions of distinct actions in an open addressed table, for nodes and statistics with many
+// actions where a linear scan per lookup adds up. An entry packs position + 1 above the action,
+// 0 is an empty slot.
+final class ActionIndex {
+    private int[] entries;
+    private int shift;
+    private int size;
+
+    ActionIndex(int expected) {
+        allocate(expected);
+    }
+
+    private void allocate(int expected) {
+        // at most half full
+        int bits = Math.max(32 - Integer.numberOfLeadingZeros(expected * 2 - 1), 3);
+        entries = new int[1 << bits];
+        shift = 32 - bits;
+        size = 0;
+    }
+
+    void clear() {
+        Arrays.fill(entries, 0);
+        size = 0;
+    }
+
+    // the position of action, -1 if it was not put
+    int get(short action) {
+        int mask = entries.length - 1;
+        for (int slot = slot(action); ; slot = slot + 1 & mask) {
+            int entry = entries[slot];
+            if (entry == 0)
+                return -1;
+            if ((short) entry == action)
+                return (entry >>> 16) - 1;
+        }
+    }
+
+    void put(short action, int position) {
+        if (size * 2 >= entries.length) {
+            int[] old = entries;
+            allocate(size * 2);
+            for (int entry : old) {
+                if (entry != 0)
+                    put((short) entry, (entry >>> 16) - 1);
+            }
+        }
+        int mask = entries.length - 1;
+        int slot = slot(action);
+        while (entries[slot] != 0 && (short) entries[slot] != action)
+            slot = slot + 1 & mask;
+        if (entries[slot] == 0)
+            size++;
+        entries[slot] = (position + 1) << 16 | action & 0xFFFF;
+    }
+
+    private int slot(short action) {
+        return action * 0x9E3779B9 >>> shift;
+    }
+
+}
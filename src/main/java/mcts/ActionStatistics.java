@@ -0,0 +1,95 @@
+package mcts;
+
+import java.util.Arrays;
+
+// visits and rewards of root children summed by action across trees
+class ActionStatistics {
+    private short[] actions = new short[16];
+    private long[] visits = new long[16];
+    private double[] rewards = new double[16];
+    // positions of the actions, root parallel searches merge every root child of every tree
+    private final ActionIndex index = new ActionIndex(16);
+    private int size;
+
+    void clear() {
+        if (size > 0)
+            index.clear();
+        size = 0;
+    }
+
+    void add(short action, int visits, double rewards) {
+        int i = indexOf(action);
+        if (i < 0) {
+            if (size == actions.length) {
+                actions = Arrays.copyOf(actions, size * 2);
+                this.visits = Arrays.copyOf(this.visits, size * 2);
+                this.rewards = Arrays.copyOf(this.rewards, size * 2);
+            }
+            i = size++;
+            actions[i] = action;
+            index.put(action, i);
+            this.visits[i] = 0;
+            this.rewards[i] = 0;
+        }
+        this.visits[i] += visits;
+        this.rewards[i] += rewards;
+    }
+
+    int size() {
+        return size;
+    }
+
+    short getAction(int i) {
+        return actions[i];
+    }
+
+    long getVisits(short action) {
+        int i = indexOf(action);
+        return i < 0
+            ? 0
+            : visits[i];
+    }
+
+    double getRewards(short action) {
+        int i = indexOf(action);
+        return i < 0
+            ? 0
+            : rewards[i];
+    }
+
+    // the action with the best mean reward, as a single tree exploits
+    short bestAction() {
+        if (size == 0)
+            throw new IllegalStateException("no visited action");
+        int best = 0;
+        for (int i = 1; i < size; i++) {
+            if (rewards[i] / visits[i] > rewards[best] / visits[best])
+                best = i;
+        }
+        return actions[best];
+    }
+
+    // true if no other action can reach the best mean reward within the given number of visits,
+    // assuming rewards in [0, 1]. Of the actionCount legal actions, those without statistics are
+    // challengers with no visits and no reward.
+    boolean isDecided(long remainingVisits, int actionCount) {
+        if (size == 0)
+            return false;
+        // an unvisited action could win every remaining visit
+        if (size < actionCount && remainingVisits > 0)
+            return false;
+        short action = bestAction();
+        int best = indexOf(action);
+        double worstBest = rewards[best] / (visits[best] + remainingVisits);
+        for (int i = 0; i < size; i++) {
+            if (i != best && (rewards[i] + remainingVisits) / (visits[i] + remainingVisits) >= worstBest)
+                return false;
+        }
+        return true;
+    }
+
+    private int indexOf(short action) {
+        return index.get(action);
+    }
+
+}
@@ -0,0 +1,452 @@
+package mcts;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tree over int node ids whose data lives in a NodeStore instead of one object per node. The
+// children of a node are a contiguous block of ids claimed with a CAS on size when the node is
+// created. Nodes do not keep their state, it is replayed from the root state. Ids are only
+// claimed during a search, the subtree kept when the root moves is compacted to the front of the
+// store once more than half of it is used, until then ids of dropped nodes stay claimed.
+class ArrayTree<S extends State> implements Tree<S> {
+    private static final int NONE = -1;
+    private static final short NO_ACTION = -1;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final NodeStore nodes;
+
+    private S rootState;
+    private int root = NONE;
+    private int virtualLoss;
+    private boolean reuse = true;
+    private long replacedVisits;
+    private long retainedVisits;
+    private long recycledCount;
+    // a node went without its children block since ids were last released
+    private volatile boolean full;
+    private int maxNodes = Integer.MAX_VALUE;
+    private int leafRollouts = 1;
+    private double explorationConstant = Math.sqrt(2);
+
+    ArrayTree(NodeStore nodes) {
+        this.nodes = nodes;
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    boolean isRootLeaf() {
+        return nodes.getChildCount(root) == 0;
+    }
+
+    int getVisits(int node) {
+        return nodes.getVisits(node);
+    }
+
+    @Override
+    public void setVirtualLoss(int virtualLoss) {
+        this.virtualLoss = virtualLoss;
+    }
+
+    @Override
+    public void setLeafRollouts(int leafRollouts) {
+        this.leafRollouts = leafRollouts;
+    }
+
+    @Override
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    // Mcts only passes UCB1 policies
+    @Override
+    public void setSelectionPolicy(SelectionPolicy policy) {
+        explorationConstant = policy.getC();
+    }
+
+    @Override
+    public int getNodeCount() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isFull() {
+        return full;
+    }
+
+    @Override
+    public void setTreeReuse(boolean reuse) {
+        this.reuse = reuse;
+    }
+
+    @Override
+    public long getReplacedVisits() {
+        return replacedVisits;
+    }
+
+    @Override
+    public long getRetainedVisits() {
+        return retainedVisits;
+    }
+
+    // ids released by compaction, a fresh root releases the whole store without counting it
+    @Override
+    public long getRecycledCount() {
+        return recycledCount;
+    }
+
+    @Override
+    public void setRoot(int action, S state) {
+        replacedVisits = 0;
+        retainedVisits = 0;
+        if (root != NONE) {
+            replacedVisits = nodes.getVisits(root);
+            int child = reuse
+                ? findChildFor(root, action)
+                : NONE;
+            if (child != NONE) {
+                retainedVisits = nodes.getVisits(child);
+                root = child;
+                rootState = state;
+                nodes.setParent(root, NONE);
+                compactIfFull();
+                if (expandLeafRoot())
+                    return;
+            }
+        }
+        size.set(0);
+        full = false;
+        root = claim(1);
+        if (root == NONE)
+            throw new IllegalStateException("capacity too small for the root: " + nodes.capacity());
+        resetNode(root, NO_ACTION, NONE);
+        short[] available = state.getAvailableActions();
+        initNode(root, state, available, available.length);
+        if (!state.isTerminal() && nodes.getChildCount(root) == 0)
+            throw new IllegalStateException(
+                "capacity too small for the root's children: " + nodes.capacity());
+        rootState = state;
+    }
+
+    // A child created when no ids were left stayed a leaf, as a root it needs its children block
+    // or the search could only roll out from it. False if there is still no room for it.
+    private boolean expandLeafRoot() {
+        if (rootState.isTerminal() || nodes.getChildCount(root) > 0)
+            return true;
+        short[] available = rootState.getAvailableActions();
+        initNode(root, rootState, available, available.length);
+        return nodes.getChildCount(root) > 0;
+    }
+
+    private void compactIfFull() {
+        if (size.get() > Math.min(nodes.capacity(), maxNodes) / 2)
+            compact();
+    }
+
+    // Moves the subtree of root to the front of the store and releases every other id. Children
+    // blocks are disjoint and claimed after their parent, so moving them in id order never
+    // overwrites a node still to be moved, and root, as a block of its own, becomes id 0.
+    private void compact() {
+        int[] firsts = {root};
+        int[] counts = {1};
+        int blocks = 1;
+        int[] stack = {root};
+        int top = 1;
+        while (top > 0) {
+            int node = stack[--top];
+            int childCount = nodes.getChildCount(node);
+            if (childCount == 0)
+                continue;
+            if (blocks == firsts.length) {
+                firsts = Arrays.copyOf(firsts, blocks * 2);
+                counts = Arrays.copyOf(counts, blocks * 2);
+            }
+            int first = nodes.getFirstChild(node);
+            firsts[blocks] = first;
+            counts[blocks++] = childCount;
+            // children at or below the untaken index were never created
+            for (int i = Math.max(nodes.getUntakenIndex(node) + 1, 0); i < childCount; i++) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = first + i;
+            }
+        }
+
+        long[] order = new long[blocks];
+        for (int i = 0; i < blocks; i++)
+            order[i] = (long) firsts[i] << 32 | i;
+        Arrays.sort(order);
+        int[] oldFirsts = new int[blocks];
+        int[] newFirsts = new int[blocks];
+        int[] sortedCounts = new int[blocks];
+        int next = 0;
+        for (int i = 0; i < blocks; i++) {
+            int block = (int) order[i];
+            oldFirsts[i] = firsts[block];
+            sortedCounts[i] = counts[block];
+            newFirsts[i] = next;
+            next += counts[block];
+        }
+
+        for (int i = 0; i < blocks; i++) {
+            for (int j = 0; j < sortedCounts[i]; j++) {
+                int from = oldFirsts[i] + j;
+                int to = newFirsts[i] + j;
+                int parent = nodes.getParent(from);
+                int firstChild = nodes.getFirstChild(from);
+                int childCount = nodes.getChildCount(from);
+                if (from != to)
+                    nodes.copy(from, to);
+                if (i == 0)
+                    continue;
+                // the parent moved before its children, only its created children have blocks
+                int newParent = move(parent, oldFirsts, newFirsts);
+                nodes.setParent(to, newParent);
+                if (j > nodes.getUntakenIndex(newParent) && childCount > 0)
+                    nodes.setChildren(to, move(firstChild, oldFirsts, newFirsts), childCount);
+            }
+        }
+        if (nodes.getChildCount(0) > 0)
+            nodes.setChildren(0, move(nodes.getFirstChild(0), oldFirsts, newFirsts),
+                nodes.getChildCount(0));
+        recycledCount += size.get() - next;
+        size.set(next);
+        full = false;
+        root = 0;
+    }
+
+    // the id a kept node moves to
+    private static int move(int node, int[] oldFirsts, int[] newFirsts) {
+        int block = Arrays.binarySearch(oldFirsts, node);
+        if (block < 0)
+            block = -block - 2;
+        return newFirsts[block] + node - oldFirsts[block];
+    }
+
+    private int findChildFor(int node, int action) {
+        int first = nodes.getFirstChild(node);
+        // children below the untaken index were never created
+        int childCount = nodes.getChildCount(node);
+        for (int i = Math.max(nodes.getUntakenIndex(node) + 1, 0); i < childCount; i++) {
+            if (nodes.getAction(first + i) == action)
+                return first + i;
+        }
+        return NONE;
+    }
+
+    @Override
+    public boolean isRootExpanded() {
+        return nodes.getUntakenIndex(root) < 0;
+    }
+
+    @Override
+    public void addRootStatistics(ActionStatistics statistics) {
+        int first = nodes.getFirstChild(root);
+        int childCount = nodes.getChildCount(root);
+        for (int i = Math.max(nodes.getUntakenIndex(root) + 1, 0); i < childCount; i++) {
+            int child = first + i;
+            if (nodes.getVisits(child) > 0)
+                statistics.add(nodes.getAction(child), nodes.getVisits(child), nodes.getRewards(child));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public S takeAction() {
+        int best = getMostValuableChild(root);
+        replacedVisits = nodes.getVisits(root);
+        retainedVisits = nodes.getVisits(best);
+        S state = (S) rootState.takeAction(nodes.getAction(best));
+        rootState = state;
+        root = best;
+        nodes.setParent(root, NONE);
+        compactIfFull();
+        if (!expandLeafRoot()) {
+            long replaced = replacedVisits;
+            setRoot(NO_ACTION, state);
+            replacedVisits = replaced;
+        }
+        return rootState;
+    }
+
+    @Override
+    public int getRootAction() {
+        return nodes.getAction(root);
+    }
+
+    @Override
+    public void growTree(Rollout<S> rollout) {
+        rollout.startIteration();
+        S state = rollout.startPath(rootState);
+        int node = root;
+        int depth = 0;
+        addVirtualLoss(node);
+        while (nodes.getChildCount(node) > 0) {
+            int untakenIdx = nodes.getUntakenIndex(node) >= 0
+                ? nodes.getAndDecrementUntakenIndex(node)
+                : NONE;
+            if (untakenIdx >= 0) {
+                node = nodes.getFirstChild(node) + untakenIdx;
+                state.applyAction(nodes.getAction(node));
+                int count = rollout.fillActions(state);
+                initNode(node, state, rollout.getActionBuffer(), count);
+                addVirtualLoss(node);
+                rollout.expanded(true);
+                depth++;
+                break;
+            }
+            node = getBestChild(node, explorationConstant, rollout.getMetrics());
+            state.applyAction(nodes.getAction(node));
+            addVirtualLoss(node);
+            depth++;
+        }
+        rollout.selected(depth);
+        if (leafRollouts > 1) {
+            simulateLeaf(node, state, rollout);
+            return;
+        }
+        S terminalState = rollout.play(state);
+        rollout.simulated();
+        backPropagate(node, terminalState, rollout);
+        rollout.backPropagated();
+    }
+
+    // plays leafRollouts rollouts from leaf and backpropagates their sums once
+    private void simulateLeaf(int leaf, S state, Rollout<S> rollout) {
+        rollout.clearAgents();
+        for (int node = leaf; node != NONE; node = nodes.getParent(node))
+            rollout.addAgent(nodes.getPreviousAgent(node));
+        rollout.simulate(state, leafRollouts);
+        rollout.simulated();
+
+        for (int node = leaf; node != NONE; node = nodes.getParent(node)) {
+            nodes.addVisits(node, leafRollouts);
+            nodes.addRewards(node, rollout.getRewardSum(nodes.getPreviousAgent(node)));
+            if (virtualLoss > 0)
+                nodes.addVirtualLosses(node, -virtualLoss);
+        }
+        rollout.backPropagated();
+    }
+
+    private int claim(int count) {
+        while (true) {
+            int first = size.get();
+            if (first + count > Math.min(nodes.capacity(), maxNodes))
+                return NONE;
+            if (size.compareAndSet(first, first + count))
+                return first;
+        }
+    }
+
+    private void resetNode(int node, short action, int parent) {
+        nodes.setAction(node, action);
+        nodes.setParent(node, parent);
+        nodes.reset(node);
+    }
+
+    // claims the children block of node, a node without room for its children stays a leaf
+    private void initNode(int node, S state, short[] available, int count) {
+        nodes.setPreviousAgent(node, state.getPreviousAgent());
+        int first = state.isTerminal()
+            ? NONE
+            : claim(count);
+        if (first == NONE) {
+            if (!state.isTerminal())
+                full = true;
+            nodes.setChildren(node, NONE, 0);
+            nodes.setUntakenIndex(node, NONE);
+            return;
+        }
+        for (int i = 0; i < count; i++)
+            resetNode(first + i, available[i], node);
+        nodes.setChildren(node, first, count);
+        nodes.setUntakenIndex(node, count - 1);
+    }
+
+    private void addVirtualLoss(int node) {
+        if (virtualLoss > 0)
+            nodes.addVirtualLosses(node, virtualLoss);
+    }
+
+    private int getPendingVisits(int node) {
+        return nodes.getVisits(node) + nodes.getVirtualLosses(node);
+    }
+
+    // the visited child with the highest mean reward, no search runs while the action is taken
+    private int getMostValuableChild(int node) {
+        int first = nodes.getFirstChild(node);
+        int end = first + nodes.getChildCount(node);
+        int best = NONE;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++) {
+            int childVisits = nodes.getVisits(child);
+            if (childVisits == 0)
+                continue;
+            double childValue = nodes.getRewards(child) / childVisits;
+            if (childValue > bestValue) {
+                best = child;
+                bestValue = childValue;
+            }
+        }
+        if (best == NONE)
+            throw new IllegalStateException("no visited child to take an action from");
+        return best;
+    }
+
+    private int getBestChild(int node, double c, WorkerMetrics metrics) {
+        int first = nodes.getFirstChild(node);
+        int end = first + nodes.getChildCount(node);
+        if (first == end)
+            throw new IllegalStateException("node " + node + " has no children to select from");
+        // uncontended selection always finds a scored child on the first scan
+        int best = scoreChildren(node, first, end, c);
+        if (best != NONE)
+            return best;
+        int attempt = 0;
+        while (true) {
+            if (metrics != null)
+                metrics.spinWaited();
+            attempt = Backoff.pause(attempt);
+            best = scoreChildren(node, first, end, c);
+            if (best != NONE)
+                return best;
+        }
+    }
+
+    private int scoreChildren(int node, int first, int end, double c) {
+        double exploration = c * SelectionPolicy.sqrtLog(getPendingVisits(node));
+        int best = NONE;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++) {
+            // unpublished or unvisited children are being simulated by another thread
+            int childVisits = getPendingVisits(child);
+            if (childVisits == 0)
+                continue;
+
+            double childValue = nodes.getRewards(child) / childVisits
+                + exploration * SelectionPolicy.invSqrt(childVisits);
+            if (childValue > bestValue) {
+                best = child;
+                bestValue = childValue;
+            }
+        }
+        return best;
+    }
+
+    private void backPropagate(int node, S terminalState, Rollout<S> rollout) {
+        while (node != NONE) {
+            double reward = rollout.getReward(terminalState, nodes.getPreviousAgent(node));
+            nodes.addVisits(node, 1);
+            nodes.addRewards(node, reward);
+            if (virtualLoss > 0)
+                nodes.addVirtualLosses(node, -virtualLoss);
+            node = nodes.getParent(node);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package mcts;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.locks.LockSupport;
+
+// spins first so a short wait stays on the cpu, then yields, then parks
+final class Backoff {
+    private static final int SPINS = 100;
+    private static final int YIELDS = 110;
+    private static final long PARK_NANOS = 10_000;
+
+    // Thread.onSpinWait is only available from Java 9
+    private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+    private Backoff() {}
+
+    static int pause(int attempt) {
+        if (attempt < SPINS) {
+            onSpinWait();
+        } else if (attempt < YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return attempt + 1;
+    }
+
+    private static void onSpinWait() {
+        if (ON_SPIN_WAIT == null)
+            return;
+        try {
+            ON_SPIN_WAIT.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.lookup()
+                .findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package mcts;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// A leaf waiting in an EvaluationQueue. The evaluator sets the value of the state for the agent
+// that moved into it and a prior for each of its actions. Search threads reuse their evaluation
+// for every leaf.
+public final class Evaluation<S extends State> {
+    private S state;
+    private short[] actions;
+    private int actionCount;
+    private float[] priors = new float[0];
+    private double value;
+    private Throwable failure;
+
+    private Thread waiter;
+    private volatile boolean done;
+
+    void reset(S state, short[] actions, int actionCount) {
+        this.state = state;
+        this.actions = actions;
+        this.actionCount = actionCount;
+        if (priors.length < actionCount)
+            priors = new float[actionCount];
+        // uniform unless the evaluator sets them
+        Arrays.fill(priors, 0, actionCount, 1f / Math.max(1, actionCount));
+        value = .5;
+        failure = null;
+        waiter = Thread.currentThread();
+        done = false;
+    }
+
+    public S getState() {
+        return state;
+    }
+
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    public short getAction(int i) {
+        return actions[i];
+    }
+
+    public void setPrior(int i, float prior) {
+        priors[i] = prior;
+    }
+
+    // in [0, 1] like the rewards of a rollout
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    float getPrior(int i) {
+        return priors[i];
+    }
+
+    double getValue() {
+        if (failure != null)
+            throw new IllegalStateException("evaluation failed", failure);
+        return value;
+    }
+
+    void fail(Throwable failure) {
+        this.failure = failure;
+    }
+
+    void complete() {
+        done = true;
+        LockSupport.unpark(waiter);
+    }
+
+    // parks the search thread, with its virtual loss still applied along the path
+    void await() {
+        while (!done)
+            LockSupport.park(this);
+    }
+
+}
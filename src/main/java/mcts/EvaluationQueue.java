@@ -0,0 +1,94 @@
+package mcts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Collects leaves from the search threads of one or more trees and evaluates them batchSize at a
+// time on its own thread. A batch is evaluated when it is full or maxWait after its first leaf,
+// so searches with fewer threads than batchSize still progress.
+public class EvaluationQueue<S extends State> implements AutoCloseable {
+    private final BlockingQueue<Evaluation<S>> queue = new LinkedBlockingQueue<>();
+    private final Evaluator<S> evaluator;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public EvaluationQueue(Evaluator<S> evaluator, int batchSize, long maxWait, TimeUnit unit) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be >= 1: " + batchSize);
+        this.evaluator = evaluator;
+        this.batchSize = batchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        thread = new Thread(this::run, "mcts-evaluator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // blocks the calling search thread until the evaluation is done
+    void evaluate(Evaluation<S> evaluation) {
+        if (closed)
+            throw new IllegalStateException("evaluation queue is closed");
+        queue.add(evaluation);
+        // close may have drained the queue for the last time before the add, the queue's
+        // count orders that drain before this read of closed
+        if (closed && queue.remove(evaluation))
+            throw new IllegalStateException("evaluation queue is closed");
+        evaluation.await();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void run() {
+        List<Evaluation<S>> batch = new ArrayList<>(batchSize);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0)
+                        continue;
+                    Evaluation<S> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+                evaluate(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+        // fail what was queued when closed, search threads must not park forever
+        queue.drainTo(batch);
+        for (Evaluation<S> evaluation : batch) {
+            evaluation.fail(new IllegalStateException("evaluation queue is closed"));
+            evaluation.complete();
+        }
+    }
+
+    // errors fail the batch too, the queue thread must outlive them or every later leaf would wait
+    private void evaluate(List<Evaluation<S>> batch) {
+        try {
+            evaluator.evaluate(batch);
+        } catch (Throwable e) {
+            for (Evaluation<S> evaluation : batch)
+                evaluation.fail(e);
+        }
+        for (Evaluation<S> evaluation : batch)
+            evaluation.complete();
+    }
+
+}
@@ -0,0 +1,10 @@
+package mcts;
+
+import java.util.List;
+
+// Values and priors for a batch of leaves, e.g. a policy/value network
+public interface Evaluator<S extends State> {
+
+    void evaluate(List<Evaluation<S>> batch);
+
+}
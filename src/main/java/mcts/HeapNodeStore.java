@@ -0,0 +1,158 @@
+package mcts;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// one primitive array per field
+class HeapNodeStore implements NodeStore {
+    private final int capacity;
+
+    private final AtomicIntegerArray visits;
+    private final AtomicLongArray rewards;
+    private final AtomicIntegerArray virtualLosses;
+    private final AtomicIntegerArray untakenIndexes;
+
+    private final short[] actions;
+    private final int[] parents;
+    private final int[] previousAgents;
+    private final int[] firstChildren;
+    private final int[] childCounts;
+
+    HeapNodeStore(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        this.capacity = capacity;
+        visits = new AtomicIntegerArray(capacity);
+        rewards = new AtomicLongArray(capacity);
+        virtualLosses = new AtomicIntegerArray(capacity);
+        untakenIndexes = new AtomicIntegerArray(capacity);
+        actions = new short[capacity];
+        parents = new int[capacity];
+        previousAgents = new int[capacity];
+        firstChildren = new int[capacity];
+        childCounts = new int[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void reset(int node) {
+        visits.lazySet(node, 0);
+        rewards.lazySet(node, 0);
+        virtualLosses.lazySet(node, 0);
+    }
+
+    @Override
+    public int getVisits(int node) {
+        return visits.get(node);
+    }
+
+    @Override
+    public void addVisits(int node, int count) {
+        visits.addAndGet(node, count);
+    }
+
+    @Override
+    public double getRewards(int node) {
+        return Double.longBitsToDouble(rewards.get(node));
+    }
+
+    @Override
+    public void addRewards(int node, double reward) {
+        long current;
+        do {
+            current = rewards.get(node);
+        } while (!rewards.compareAndSet(
+            node,
+            current,
+            Double.doubleToRawLongBits(Double.longBitsToDouble(current) + reward)));
+    }
+
+    @Override
+    public int getVirtualLosses(int node) {
+        return virtualLosses.get(node);
+    }
+
+    @Override
+    public void addVirtualLosses(int node, int delta) {
+        virtualLosses.addAndGet(node, delta);
+    }
+
+    @Override
+    public int getUntakenIndex(int node) {
+        return untakenIndexes.get(node);
+    }
+
+    @Override
+    public int getAndDecrementUntakenIndex(int node) {
+        return untakenIndexes.getAndDecrement(node);
+    }
+
+    @Override
+    public void setUntakenIndex(int node, int untakenIndex) {
+        untakenIndexes.set(node, untakenIndex);
+    }
+
+    @Override
+    public short getAction(int node) {
+        return actions[node];
+    }
+
+    @Override
+    public void setAction(int node, short action) {
+        actions[node] = action;
+    }
+
+    @Override
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    @Override
+    public void setParent(int node, int parent) {
+        parents[node] = parent;
+    }
+
+    @Override
+    public int getPreviousAgent(int node) {
+        return previousAgents[node];
+    }
+
+    @Override
+    public void setPreviousAgent(int node, int agent) {
+        previousAgents[node] = agent;
+    }
+
+    @Override
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    @Override
+    public int getChildCount(int node) {
+        return childCounts[node];
+    }
+
+    @Override
+    public void setChildren(int node, int firstChild, int childCount) {
+        firstChildren[node] = firstChild;
+        childCounts[node] = childCount;
+    }
+
+    @Override
+    public void copy(int from, int to) {
+        visits.set(to, visits.get(from));
+        rewards.set(to, rewards.get(from));
+        virtualLosses.set(to, virtualLosses.get(from));
+        untakenIndexes.set(to, untakenIndexes.get(from));
+        actions[to] = actions[from];
+        parents[to] = parents[from];
+        previousAgents[to] = previousAgents[from];
+        firstChildren[to] = firstChildren[from];
+        childCounts[to] = childCounts[from];
+    }
+
+}
@@ -0,0 +1,78 @@
+package mcts;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Move-Average Sampling Technique: keeps the mean reward of every action for the agent that
+// played it in this thread's rollouts, and plays the best available action except for a random
+// one with probability epsilon. Actions are indexes into the statistics, as in TicTacToe where
+// an action is a cell. The statistics persist across the searches of the thread.
+public class MastRolloutPolicy<S extends State> implements RolloutPolicy<S> {
+    private final double epsilon;
+
+    private double[] rewards = new double[64];
+    private int[] counts = new int[64];
+    // actions played in the current rollout and the agents that played them
+    private short[] playedActions = new short[64];
+    private int[] playedBy = new int[64];
+    private int played;
+
+    public MastRolloutPolicy(double epsilon) {
+        if (epsilon < 0 || epsilon > 1)
+            throw new IllegalArgumentException("epsilon must be between 0 and 1: " + epsilon);
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public short chooseAction(S state, short[] actions, int count, Random random) {
+        int start = random.nextInt(count);
+        if (random.nextDouble() < epsilon)
+            return actions[start];
+
+        // ties go to the first best action after a random start
+        short best = actions[start];
+        double bestValue = getMean(best);
+        for (int i = 1; i < count; i++) {
+            short action = actions[(start + i) % count];
+            double value = getMean(action);
+            if (value > bestValue) {
+                best = action;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void onAction(S state, short action) {
+        if (played == playedActions.length) {
+            playedActions = Arrays.copyOf(playedActions, played * 2);
+            playedBy = Arrays.copyOf(playedBy, played * 2);
+        }
+        playedActions[played] = action;
+        playedBy[played++] = state.getPreviousAgent();
+    }
+
+    @Override
+    public void onRolloutEnd(S state) {
+        for (int i = 0; i < played; i++) {
+            short action = playedActions[i];
+            if (action >= counts.length) {
+                int length = Math.max(action + 1, counts.length * 2);
+                rewards = Arrays.copyOf(rewards, length);
+                counts = Arrays.copyOf(counts, length);
+            }
+            rewards[action] += getReward(state, playedBy[i]);
+            counts[action]++;
+        }
+        played = 0;
+    }
+
+    // unplayed actions look as good as a draw
+    double getMean(short action) {
+        return action < counts.length && counts[action] > 0
+            ? rewards[action] / counts[action]
+            : .5;
+    }
+
+}
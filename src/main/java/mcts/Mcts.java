@@ -1,25 +1,78 @@
 package mcts;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 public class Mcts<S extends State> {
-    private static final int NO_ACTION = -1;
+    private static final int DECIDED_CHECK_INTERVAL = 64;
 
-    private final AtomicInteger totalIterations = new AtomicInteger();
+    // striped, the search threads would contend on one atomic counter
+    private final LongAdder totalIterations = new LongAdder();
+    private final LongAdder ponderIterations = new LongAdder();
+    private final List<Future<?>> ponderTasks = new ArrayList<>();
 
     private final ExecutorService executor;
     private final long timePerActionMillis;
     private final int maxIterations;
     private final int threads;
 
-    private Node<S> root;
+    private Supplier<Tree<S>> treeFactory = NodeTree::new;
+    private Tree<S> tree;
+    // the node trees behind tree, one per root tree, empty for array trees
+    private List<TreeFeatures<S>> features;
+    private S rootState;
+    private int rootTrees = 1;
     private int lastAction;
+    private volatile boolean pondering;
+    private Search search;
+    private SearchScheduler.Game game;
+    private int virtualLoss;
+    private int maxNodes = Integer.MAX_VALUE;
+    private int transpositions;
+    private int leafRollouts = 1;
+    private ProgressiveWidening widening;
+    private SelectionPolicy policy;
+    private EvaluationQueue<S> evaluations;
+    private Supplier<? extends RolloutPolicy<S>> rolloutPolicies;
+    // one per worker, kept across searches so policies can learn from earlier rollouts
+    private RolloutPolicy<S>[] workerPolicies;
+    // null when metrics are off
+    private volatile WorkerMetrics[] workerMetrics;
+    // one stream per worker when seeded, else rollouts use ThreadLocalRandom
+    private Random[] workerRandoms;
+    private long treeSeed;
+    private ReplayLog replayLog;
+    private OpeningBook book;
+    private String replayName;
+    private boolean reuse = true;
+    private boolean rootPreExpansion;
+    private volatile double lastRetainedFraction;
+    private final LongAdder replacedVisits = new LongAdder();
+    private final LongAdder retainedVisits = new LongAdder();
 
     public Mcts(
         ExecutorService executor,
@@ -30,6 +83,7 @@ public class Mcts<S extends State> {
         this.threads = threads;
         this.timePerActionMillis = timePerActionMillis;
         this.maxIterations = maxIterations;
+        setTreeFactory(treeFactory);
     }
 
     public int getLastAction() {
@@ -37,98 +91,636 @@ public class Mcts<S extends State> {
     }
 
     public int getTotalIterations() {
-        return totalIterations.get();
+        return (int) totalIterations.sum();
+    }
+
+    public int getPonderIterations() {
+        return (int) ponderIterations.sum();
+    }
+
+    public void setVirtualLoss(int virtualLoss) {
+        if (virtualLoss < 0)
+            throw new IllegalArgumentException("virtualLoss must be >= 0: " + virtualLoss);
+        this.virtualLoss = virtualLoss;
+        tree.setVirtualLoss(virtualLoss);
+    }
+
+    // rollouts per selected leaf, their summed rewards are backpropagated once so nodes on the
+    // path see leafRollouts fewer atomic updates, an iteration counts leafRollouts visits
+    public void setLeafRollouts(int leafRollouts) {
+        if (leafRollouts < 1)
+            throw new IllegalArgumentException("leafRollouts must be >= 1: " + leafRollouts);
+        this.leafRollouts = leafRollouts;
+        tree.setLeafRollouts(leafRollouts);
+    }
+
+    // past maxNodes the search only updates existing nodes, the least visited subtrees are pruned
+    // between moves
+    public void setMaxNodes(int maxNodes) {
+        if (maxNodes < 2)
+            throw new IllegalArgumentException("maxNodes must be >= 2: " + maxNodes);
+        tree.setMaxNodes(maxNodes);
+        this.maxNodes = maxNodes;
+    }
+
+    // nodes of positions reached through different move orders are shared, the states must
+    // implement State.getHash() and their graph must be acyclic. Set on a searched tree, its
+    // nodes are hashed and the first node of each position is the one found from then on.
+    public void setTranspositions(int capacity) {
+        requireFeatures("transpositions");
+        for (TreeFeatures<S> tree : features)
+            tree.setTranspositions(capacity);
+        this.transpositions = capacity;
+    }
+
+    // Evaluates leaves in batches instead of playing rollouts from them, the search threads wait
+    // for their leaves with a virtual loss of at least 1 applied. The queue can be shared by
+    // several Mcts to fill its batches.
+    public void setEvaluationQueue(EvaluationQueue<S> evaluations) {
+        if (evaluations != null)
+            requireFeatures("evaluators");
+        for (TreeFeatures<S> tree : features)
+            tree.setEvaluationQueue(evaluations);
+        this.evaluations = evaluations;
+        if (evaluations != null && virtualLoss == 0)
+            setVirtualLoss(1);
+    }
+
+    // UCB1 with c = sqrt(2) by default, array trees only support UCB1
+    public void setSelectionPolicy(SelectionPolicy policy) {
+        if (features.isEmpty())
+            requireUcb1(policy);
+        tree.setSelectionPolicy(policy);
+        this.policy = policy;
+    }
+
+    // Plays rollouts with a policy from factory instead of uniformly at random. Each worker thread
+    // gets its own policy, created on its first rollout.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setRolloutPolicy(Supplier<? extends RolloutPolicy<S>> factory) {
+        this.rolloutPolicies = factory;
+        this.workerPolicies = factory != null
+            ? new RolloutPolicy[threads]
+            : null;
+    }
+
+    // Writes the root and the visited nodes up to levels below it, with their visits and rewards,
+    // for OpeningBook.open. Node trees only, and a single one: each of root parallel trees holds
+    // only a fraction of the search.
+    public void writeSnapshot(Path file, int levels) throws IOException {
+        requireFeatures("snapshots");
+        if (features.size() > 1)
+            throw new IllegalStateException("root parallel trees do not support snapshots");
+        stopBackground();
+        features.get(0).writeSnapshot(file, levels);
+    }
+
+    // Nodes of positions in book start with its visits and rewards, read from the mapped file
+    // as the nodes are created. The book is followed from the root it was written from, set
+    // with setRoot(-1, state), along the actions taken.
+    public void setOpeningBook(OpeningBook book) {
+        if (book != null)
+            requireFeatures("opening books");
+        for (TreeFeatures<S> tree : features)
+            tree.setOpeningBook(book);
+        this.book = book;
+    }
+
+    // Makes searches repeatable: each worker draws from its own stream derived from seed, kept
+    // across searches, as does the tree. A single threaded search bounded by iterations rather
+    // than time then grows the same tree and takes the same actions on every run. Several
+    // threads still interleave differently, pondering depends on the opponent's time, and the
+    // early stop of searchAsync estimates the iterations left from the time left, so a seeded
+    // searchAsync with a finite timeout is not repeatable either.
+    public void setSeed(long seed) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Random[] randoms = new Random[threads];
+        for (int i = 0; i < threads; i++)
+            randoms[i] = new SplitRandom(seeds.split());
+        workerRandoms = randoms;
+        treeSeed = seeds.nextLong();
+        seedTrees();
+    }
+
+    // array trees expand actions in order and have nothing to seed, root parallel trees each
+    // get their own seed
+    private void seedTrees() {
+        for (int i = 0; i < features.size(); i++)
+            features.get(i).setSeed(treeSeed + i);
+    }
+
+    // logs the root statistics of every action taken under name, null stops logging
+    public void setReplayLog(ReplayLog replayLog, String name) {
+        this.replayLog = replayLog;
+        this.replayName = name;
+    }
+
+    // Counts iterations, expansions, rollout plies, selection depths, spin waits and the time
+    // spent per phase, in plain per thread counters cheap enough to leave on. Enabling starts
+    // from zero, searches started later record into the new counters. Off by default, when off
+    // the search only checks for the missing counters.
+    public void setMetrics(boolean enabled) {
+        WorkerMetrics[] metrics = null;
+        if (enabled) {
+            metrics = new WorkerMetrics[threads];
+            for (int i = 0; i < threads; i++)
+                metrics[i] = new WorkerMetrics();
+        }
+        workerMetrics = metrics;
+    }
+
+    // a snapshot of the metrics, empty when they are off
+    public SearchMetrics getMetrics() {
+        WorkerMetrics[] metrics = workerMetrics;
+        return metrics != null
+            ? new SearchMetrics(metrics)
+            : SearchMetrics.EMPTY;
+    }
+
+    // Registers the metrics with the platform MBean server as mcts:type=Search,name=<name>,
+    // every attribute read takes a fresh snapshot. Unregister the returned name when done.
+    public ObjectName registerMetrics(String name) {
+        SearchMetricsMXBean live = (SearchMetricsMXBean) Proxy.newProxyInstance(
+            SearchMetricsMXBean.class.getClassLoader(),
+            new Class<?>[] { SearchMetricsMXBean.class },
+            (proxy, method, args) -> {
+                try {
+                    return method.invoke(getMetrics(), args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        try {
+            ObjectName objectName =
+                ObjectName.getInstance("mcts:type=Search,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new StandardMBean(live, SearchMetricsMXBean.class, true), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Lets a node with n visits have ceil(c * (n + 1)^alpha) children instead of expanding all
+    // its actions first, for states with many actions. Children are allocated as they are expanded.
+    public void setProgressiveWidening(double c, double alpha) {
+        requireFeatures("progressive widening");
+        ProgressiveWidening widening = new ProgressiveWidening(c, alpha);
+        for (TreeFeatures<S> tree : features)
+            tree.setProgressiveWidening(widening);
+        this.widening = widening;
+    }
+
+    public int getNodeCount() {
+        return tree.getNodeCount();
+    }
+
+    public long getRecycledCount() {
+        return tree.getRecycledCount();
+    }
+
+    // Keeps the subtree of the action taken as the next root, the default. Without reuse every
+    // root change starts from a fresh root, for measuring what reuse is worth.
+    public void setTreeReuse(boolean reuse) {
+        this.reuse = reuse;
+        tree.setTreeReuse(reuse);
+    }
+
+    // Expands all the root's children on the caller in setRoot, so the next search starts on a
+    // root whose children array is complete instead of spending its first iterations on it.
+    // Each child gets one real iteration with its rollout, selection only scores visited
+    // children. They are part of setRoot, not of a search, and not in getTotalIterations.
+    public void setRootPreExpansion(boolean preExpand) {
+        this.rootPreExpansion = preExpand;
+    }
+
+    // the share of the previous root's visits kept by the last root change
+    public double getLastRetainedFraction() {
+        return lastRetainedFraction;
+    }
+
+    // the share of the replaced roots' visits kept over all root changes
+    public double getRetainedFraction() {
+        long replaced = replacedVisits.sum();
+        return replaced == 0
+            ? 0
+            : (double) retainedVisits.sum() / replaced;
+    }
+
+    // one object per node that keeps only its action, states are replayed from the root
+    public void setActionNodeTree() {
+        setTreeFactory(() -> new NodeTree<>(false));
+    }
+
+    // Nodes as primitive arrays of at most capacity entries instead of one object per node. Array
+    // trees only search with UCB1, without transpositions, progressive widening, evaluators,
+    // snapshots or opening books, setting any of those fails whichever is set first.
+    public void setArrayTree(int capacity) {
+        requireArrayTreeSettings();
+        setTreeFactory(() -> new ArrayTree<>(new HeapNodeStore(capacity)));
+    }
+
+    // Nodes outside the heap in at most maxBytes, up to OffHeapNodeStore.MAX_BYTES (40 GB), the
+    // tree stops expanding when they are used up. Needs Java 9+ and -XX:MaxDirectMemorySize
+    // raised above maxBytes when it is larger than -Xmx. Same restrictions as setArrayTree.
+    public void setOffHeapTree(long maxBytes) {
+        requireArrayTreeSettings();
+        setTreeFactory(() -> new ArrayTree<>(new OffHeapNodeStore(maxBytes)));
+    }
+
+    // Search rootTrees independent trees from the same root and sum their root statistics to
+    // choose the action. Worker w grows tree w % rootTrees, so with fewer trees than threads each
+    // is shared by the workers of equal remainder, whatever socket their threads run on. One tree
+    // per thread is root parallelism, 1 (the default) is a single tree shared by all threads.
+    // Each tree gets the full capacity of the configured backend.
+    public void setRootParallel(int rootTrees) {
+        if (rootTrees < 1 || rootTrees > threads)
+            throw new IllegalArgumentException("rootTrees must be between 1 and threads: " + rootTrees);
+        this.rootTrees = rootTrees;
+        setTreeFactory(treeFactory);
+    }
+
+    // array trees support none of the settings of TreeFeatures and only UCB1
+    private void requireArrayTreeSettings() {
+        if (transpositions > 0)
+            throw new IllegalStateException("array trees do not support transpositions");
+        if (widening != null)
+            throw new IllegalStateException("array trees do not support progressive widening");
+        if (evaluations != null)
+            throw new IllegalStateException("array trees do not support evaluators");
+        if (book != null)
+            throw new IllegalStateException("array trees do not support opening books");
+        if (policy != null)
+            requireUcb1(policy);
+    }
+
+    private static void requireUcb1(SelectionPolicy policy) {
+        if (policy.getKind() != SelectionPolicy.UCB1)
+            throw new IllegalStateException("array trees only support UCB1");
+    }
+
+    private void requireFeatures(String feature) {
+        if (features.isEmpty())
+            throw new IllegalStateException("array trees do not support " + feature);
+    }
+
+    // the new tree starts from the current root, if any, without the old tree's statistics
+    @SuppressWarnings("unchecked")
+    private void setTreeFactory(Supplier<Tree<S>> treeFactory) {
+        stopBackground();
+        this.treeFactory = treeFactory;
+        List<Tree<S>> trees = new ArrayList<>(rootTrees);
+        List<TreeFeatures<S>> features = new ArrayList<>(rootTrees);
+        for (int i = 0; i < rootTrees; i++) {
+            Tree<S> tree = treeFactory.get();
+            trees.add(tree);
+            if (tree instanceof TreeFeatures)
+                features.add((TreeFeatures<S>) tree);
+        }
+        Tree<S> tree = rootTrees == 1
+            ? trees.get(0)
+            : new RootParallelTree<>(trees);
+        tree.setVirtualLoss(virtualLoss);
+        tree.setLeafRollouts(leafRollouts);
+        tree.setMaxNodes(maxNodes);
+        if (policy != null)
+            tree.setSelectionPolicy(policy);
+        tree.setTreeReuse(reuse);
+        for (TreeFeatures<S> nodeTree : features) {
+            if (transpositions > 0)
+                nodeTree.setTranspositions(transpositions);
+            if (widening != null)
+                nodeTree.setProgressiveWidening(widening);
+            if (evaluations != null)
+                nodeTree.setEvaluationQueue(evaluations);
+            if (book != null)
+                nodeTree.setOpeningBook(book);
+        }
+        this.tree = tree;
+        this.features = features;
+        if (workerRandoms != null)
+            seedTrees();
+        if (rootState != null)
+            tree.setRoot(-1, rootState);
+    }
+
+    Tree<S> getTree() {
+        return tree;
     }
 
     public void setRoot(int action, S state) {
-        if (root != null) {
-            Node<S> child = root.findChildFor(action);
-            if (child != null) {
-                root = child;
-                root.releaseParent();
-                return;
+        stopBackground();
+        tree.setRoot(action, state);
+        rootState = state;
+        recordReuse();
+        if (rootPreExpansion) {
+            Rollout<S> rollout = newRollout(0);
+            while (!tree.isRootExpanded())
+                tree.growTree(rollout);
+        }
+    }
+
+    private void recordReuse() {
+        long replaced = tree.getReplacedVisits();
+        long retained = tree.getRetainedVisits();
+        if (replaced == 0)
+            return;
+        replacedVisits.add(replaced);
+        retainedVisits.add(retained);
+        lastRetainedFraction = (double) retained / replaced;
+    }
+
+    // Keeps growing the tree while the opponent thinks, until the next setRoot, think or
+    // takeAction, or until the tree is full: at maxNodes or an array tree's capacity. Runs on
+    // the executor, which must not be the one the opponent searches with, or with a scheduler
+    // as a search less urgent than any other on it.
+    public void startPondering() {
+        if (game != null) {
+            game.ponder();
+            return;
+        }
+        if (executor == null)
+            throw new IllegalStateException("pondering needs an executor or a scheduler");
+        stopBackground();
+        pondering = true;
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            ponderTasks.add(executor.submit(() -> ponder(worker)));
+        }
+    }
+
+    public void stopPondering() {
+        if (!pondering)
+            return;
+        pondering = false;
+        try {
+            for (Future<?> task : ponderTasks)
+                task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            ponderTasks.clear();
+        }
+        // pondering on a scheduler is a search, the slices still queued are finished here
+        if (game != null)
+            game.stopPondering();
+        awaitSearch();
+    }
+
+    private void ponder(int worker) {
+        Rollout<S> rollout = newRollout(worker);
+        while (isPondering()) {
+            tree.growTree(rollout);
+            ponderIterations.increment();
+        }
+    }
+
+    // a full tree would only refine statistics the next search may not need
+    private boolean isPondering() {
+        return pondering && !tree.isFull();
+    }
+
+    private Rollout<S> newRollout(int worker) {
+        RolloutPolicy<S> policy = null;
+        if (workerPolicies != null) {
+            if (workerPolicies[worker] == null)
+                workerPolicies[worker] = rolloutPolicies.get();
+            policy = workerPolicies[worker];
+        }
+        Random random = workerRandoms != null
+            ? workerRandoms[worker]
+            : ThreadLocalRandom.current();
+        WorkerMetrics[] metrics = workerMetrics;
+        return new Rollout<>(random, worker, policy, metrics != null
+            ? metrics[worker]
+            : null);
+    }
+
+    // Searches on the executor and completes with the action taken, once every thread has run
+    // out of iterations, the timeout has passed or the best root action can no longer be
+    // overtaken in the remaining budget. Cancelling the future stops the search without taking
+    // an action. Other calls on this Mcts wait for a running search to finish.
+    public CompletableFuture<Integer> searchAsync() {
+        return searchAsync(timePerActionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public CompletableFuture<Integer> searchAsync(long timeout, TimeUnit unit) {
+        if (game != null)
+            return game.search(timeout, unit);
+        if (executor == null)
+            throw new IllegalStateException("searchAsync needs an executor");
+        return startSearch(unit.toNanos(timeout), true, false, task -> executor.execute(() -> {
+            while (task.iterate(Integer.MAX_VALUE))
+                ;
+            task.finish();
+        }));
+    }
+
+    // Runs think, searchAsync and pondering on the scheduler's workers instead of the executor.
+    // think then only blocks the calling thread, which can be a virtual thread hosting the game.
+    // As on the executor, think uses its whole budget and only searchAsync stops early.
+    public SearchScheduler.Game setScheduler(SearchScheduler scheduler, int priority) {
+        game = scheduler.newGame(this, priority);
+        return game;
+    }
+
+    // Starts a search and hands one task per thread to the caller, used by searchAsync and
+    // SearchScheduler. Without takeAction the search completes with -1 and does not stop early,
+    // a ponder search runs until stopPondering instead of its budget.
+    CompletableFuture<Integer> startSearch(
+        long timeoutNanos,
+        boolean takeAction,
+        boolean ponder,
+        Consumer<SearchTask> tasks) {
+
+        stopBackground();
+        pondering = ponder;
+        Search search = new Search(timeoutNanos, takeAction, ponder);
+        this.search = search;
+        for (int i = 0; i < threads; i++)
+            tasks.accept(search.new Task(i));
+        return search.result;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    private void stopBackground() {
+        stopPondering();
+        awaitSearch();
+    }
+
+    private void awaitSearch() {
+        if (search != null) {
+            try {
+                search.finished.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
             }
+            search = null;
         }
-        root = new Node<>(null, NO_ACTION, state);
     }
 
     public void think() {
+        stopBackground();
+        if (game != null) {
+            game.think(timePerActionMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
         if (threads == 1) {
-            doThink();
+            doThink(0);
             return;
         }
 
         Collection<Callable<Void>> tasks = new ArrayList<>();
 
-        for (int i = 0; i < threads; i++)
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
             tasks.add(() -> {
-                doThink();
+                doThink(worker);
                 return null;
             });
+        }
 
         try {
-            executor.invokeAll(tasks);
+            for (Future<Void> task : executor.invokeAll(tasks))
+                task.get();
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("search thread failed", e.getCause());
         }
     }
 
-    private void doThink() {
+    private void doThink(int worker) {
         long started = System.currentTimeMillis();
         int i = 0;
-        Random random = ThreadLocalRandom.current();
+        Rollout<S> rollout = newRollout(worker);
         while (i++ < maxIterations && System.currentTimeMillis() - started < timePerActionMillis
-            || !root.isExpanded()) {
+            || !tree.isRootExpanded()) {
 
-            growTree(random);
-            totalIterations.incrementAndGet();
+            tree.growTree(rollout);
+            totalIterations.increment();
         }
     }
 
     public State takeAction() {
-        Node<S> actionNode = root.childToExploit();
-        lastAction = actionNode.getAction();
-        root = actionNode;
-        root.releaseParent();
-        return actionNode.getState();
-    }
-
-    private void growTree(Random random) {
-        Node<S> child = selectOrExpand();
-        S terminalState = simulate(child, random);
-        backPropagate(child, terminalState);
-    }
-
-    private Node<S> selectOrExpand() {
-        Node<S> node = root;
-        while (!node.isTerminal()) {
-            if (!node.isExpanded()) {
-                Node<S> expandedNode = node.expand();
-                if (expandedNode != null)
-                    return expandedNode;
-            }
-            node = node.childToExplore();
-        }
-        return node;
+        stopBackground();
+        return takeTreeAction();
     }
 
-    @SuppressWarnings("unchecked")
-    private S simulate(Node<S> node, Random random) {
-        S state = (S) node.getState().copy();
-        while (!state.isTerminal()) {
-            short[] actions = state.getAvailableActions();
-            int randomIdx = random.nextInt(actions.length);
-            short action = actions[randomIdx];
-            state.applyAction(action);
+    private S takeTreeAction() {
+        ActionStatistics statistics = null;
+        if (replayLog != null) {
+            statistics = new ActionStatistics();
+            tree.addRootStatistics(statistics);
         }
+        S state = tree.takeAction();
+        rootState = state;
+        recordReuse();
+        lastAction = tree.getRootAction();
+        if (replayLog != null)
+            replayLog.record(replayName, lastAction, statistics);
         return state;
     }
 
-    private void backPropagate(Node<S> node, S terminalState) {
-        while (node != null) {
-            double reward = terminalState.getRewardFor(node.getPreviousAgent());
-            node.updateRewards(reward);
-            node = node.getParent();
+    private final class Search {
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final AtomicInteger running = new AtomicInteger(threads);
+        private final LongAdder iterations = new LongAdder();
+        private final long started = System.nanoTime();
+        private final long timeoutNanos;
+        private final boolean takeAction;
+        private final boolean ponder;
+        // legal actions at the root, those not visited yet keep the search from stopping early
+        private final int rootActions;
+        private volatile boolean stopped;
+
+        Search(long timeoutNanos, boolean takeAction, boolean ponder) {
+            this.timeoutNanos = timeoutNanos;
+            this.takeAction = takeAction;
+            this.ponder = ponder;
+            rootActions = takeAction && rootState != null
+                ? rootState.getAvailableActions().length
+                : 0;
+        }
+
+        boolean isStopped(int iteration, ActionStatistics statistics) {
+            if (stopped)
+                return true;
+            long elapsed = System.nanoTime() - started;
+            if (elapsed >= timeoutNanos) {
+                stopped = true;
+            } else if (takeAction && iteration % DECIDED_CHECK_INTERVAL == 0) {
+                long done = iterations.sum();
+                long remaining = (long) maxIterations * threads - done;
+                if (elapsed > 0)
+                    remaining = Math.min(remaining, (long) (done * ((double) (timeoutNanos - elapsed) / elapsed)));
+                statistics.clear();
+                tree.addRootStatistics(statistics);
+                stopped = statistics.isDecided(remaining * leafRollouts, rootActions);
+            }
+            return stopped;
+        }
+
+        private final class Task implements SearchTask {
+            private final Rollout<S> rollout;
+            private final ActionStatistics statistics = new ActionStatistics();
+            private int i;
+            private int done;
+
+            Task(int worker) {
+                rollout = newRollout(worker);
+            }
+
+            @Override
+            public boolean iterate(int count) {
+                try {
+                    for (int n = 0; n < count; n++) {
+                        if (result.isDone() || !(ponder
+                            ? isPondering()
+                            : i++ < maxIterations && !isStopped(i, statistics) || !tree.isRootExpanded()))
+                            return false;
+
+                        tree.growTree(rollout);
+                        (ponder ? ponderIterations : totalIterations).increment();
+                        iterations.increment();
+                        done++;
+                    }
+                    return true;
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                    return false;
+                }
+            }
+
+            @Override
+            public void finish() {
+                if (running.decrementAndGet() == 0)
+                    Search.this.finish();
+            }
+
+            @Override
+            public int getIterations() {
+                return done;
+            }
+        }
+
+        // runs on the last worker, so the tree is quiescent
+        void finish() {
+            try {
+                if (takeAction && !result.isDone())
+                    takeTreeAction();
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                finished.countDown();
+                result.complete(takeAction
+                    ? lastAction
+                    : -1);
+            }
         }
     }
 
@@ -1,43 +1,306 @@
 package mcts;
 
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 class Node<S extends State> {
     private static final double EXPLORATION_CONSTANT = Math.sqrt(2);
     private static final double NO_EXPLORATION = 0;
+    // nodes with more actions find their children through an ActionIndex
+    private static final int WIDE = 16;
+    static final SelectionPolicy DEFAULT_POLICY = SelectionPolicy.ucb1(EXPLORATION_CONSTANT);
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<Node> REWARDS =
+        AtomicLongFieldUpdater.newUpdater(Node.class, "rewards");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<Node> REWARD_SQUARES =
+        AtomicLongFieldUpdater.newUpdater(Node.class, "rewardSquares");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Node> VIRTUAL_LOSSES =
+        AtomicIntegerFieldUpdater.newUpdater(Node.class, "virtualLosses");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Node> PRIORS_CLAIMED =
+        AtomicIntegerFieldUpdater.newUpdater(Node.class, "priorsClaimed");
+
+    // children are expanded in index order, this is the index of the next one
     private final AtomicInteger untakenIndex = new AtomicInteger();
     private final AtomicInteger visits = new AtomicInteger();
 
-    private final AtomicReferenceArray<Node<S>> children;
-    private final short[] untakenActions;
-    private final S state;
-    private final int action;
+    // not final so NodePool can reuse the node, published through the parent's children
+    private AtomicReferenceArray<Node<S>> children;
+    // Children beyond the first block, for nodes widened progressively. Block k holds the next
+    // children.length() << k children and is allocated when its first child is expanded.
+    private AtomicReferenceArray<AtomicReferenceArray<Node<S>>> blocks;
+    private short[] untakenActions;
+    private int actionCount;
+    private int action;
+    private int previousAgent;
+    private boolean terminal;
+    // key of the node in a TranspositionTable
+    private long hash;
+    // record of the node in the tree's OpeningBook, its children are looked up from there
+    private int bookIndex;
+    // positions of the actions of a wide node, built on the first lookup, they do not move
+    // once the node is initialized
+    private volatile ActionIndex actionIndex;
+    // probability of the node's action for PUCT, uniform unless an evaluator sets it
+    private float prior;
+    // priors of the actions from an evaluator, children expanded later take theirs from here
+    private volatile float[] priors;
+    // 1 while a thread evaluates the priors, so concurrent searches evaluate a root only once
+    private volatile int priorsClaimed;
+
+    // null for nodes that only keep their action, their state is replayed from the root
+    private S state;
+    private Node<S> nextFree;
 
     private volatile Node<S> parent;
-    private volatile double rewards;
+    // raw bits of the double sum, updated with CAS so concurrent rewards are not lost
+    private volatile long rewards;
+    // raw bits of the sum of squared rewards, only kept for UCB1-Tuned
+    private volatile long rewardSquares;
+    // pending visits of threads still simulating below this node, counted with zero reward
+    private volatile int virtualLosses;
 
     Node(Node<S> parent, int action, S state) {
+        this(parent, action, state, true);
+    }
+
+    Node(Node<S> parent, int action, S state, boolean keepState) {
+        this(parent, action, state, keepState, Integer.MAX_VALUE, null);
+    }
+
+    Node(Node<S> parent, int action, S state, boolean keepState, int firstChildren, Random random) {
+        init(parent, action, state, keepState, firstChildren, random);
+    }
+
+    // Reuses the arrays of a recycled node when they are large enough. Only firstChildren
+    // children are allocated up front, their actions are then shuffled so progressive widening
+    // does not favour the first actions of the state, with random or else ThreadLocalRandom.
+    void init(Node<S> parent, int action, S state, boolean keepState, int firstChildren,
+              Random random) {
         this.parent = parent;
         this.action = action;
-        this.state = state;
-        this.untakenActions = state.getAvailableActions();
-        this.children = new AtomicReferenceArray<>(untakenActions.length);
-        this.untakenIndex.set(untakenActions.length - 1);
+        this.state = keepState
+            ? state
+            : null;
+        this.previousAgent = state.getPreviousAgent();
+        this.terminal = state.isTerminal();
+        if (untakenActions == null) {
+            untakenActions = state.getAvailableActions();
+            actionCount = untakenActions.length;
+        } else {
+            actionCount = state.getAvailableActions(untakenActions);
+            if (actionCount > untakenActions.length)
+                untakenActions = state.getAvailableActions();
+        }
+        int first = Math.max(1, Math.min(actionCount, firstChildren));
+        if (children == null || children.length() < first)
+            children = new AtomicReferenceArray<>(first);
+        blocks = actionCount > children.length()
+            ? new AtomicReferenceArray<>(32)
+            : null;
+        if (first < actionCount)
+            shuffleActions(random != null
+                ? random
+                : ThreadLocalRandom.current());
+        this.bookIndex = OpeningBook.NONE;
+        this.actionIndex = null;
+        this.prior = parent == null
+            ? 1
+            : 1f / parent.actionCount;
+        this.priors = null;
+        this.priorsClaimed = 0;
+        this.visits.set(0);
+        this.rewards = 0;
+        this.rewardSquares = 0;
+        this.virtualLosses = 0;
+        this.untakenIndex.set(0);
+    }
+
+    private void shuffleActions(Random random) {
+        for (int i = actionCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            short action = untakenActions[i];
+            untakenActions[i] = untakenActions[j];
+            untakenActions[j] = action;
+        }
+    }
+
+    Node<S> getNextFree() {
+        return nextFree;
+    }
+
+    void setNextFree(Node<S> nextFree) {
+        this.nextFree = nextFree;
+    }
+
+    int getActionCount() {
+        return actionCount;
+    }
+
+    // number of children taken for expansion so far, some may not be published yet
+    int getChildCount() {
+        return Math.min(untakenIndex.get(), actionCount);
+    }
+
+    Node<S> getChild(int i) {
+        int first = children.length();
+        if (i < first)
+            return children.get(i);
+        AtomicReferenceArray<Node<S>> block = blocks.get(blockOf(i, first));
+        return block == null
+            ? null
+            : block.get(offsetIn(i, first));
+    }
+
+    void setChild(int i, Node<S> child) {
+        int first = children.length();
+        if (i < first) {
+            children.set(i, child);
+            return;
+        }
+        int k = blockOf(i, first);
+        AtomicReferenceArray<Node<S>> block = blocks.get(k);
+        if (block == null) {
+            // sized to match the remaining actions for the last block
+            int start = first * ((1 << k) - 1);
+            blocks.compareAndSet(k, null, new AtomicReferenceArray<>(Math.min(first << k, actionCount - start)));
+            block = blocks.get(k);
+        }
+        block.set(offsetIn(i, first), child);
+    }
+
+    // unlike setChild(i, null), never allocates the block of an index that has no child
+    private void clearChild(int i) {
+        int first = children.length();
+        if (i < first) {
+            children.set(i, null);
+            return;
+        }
+        AtomicReferenceArray<Node<S>> block = blocks.get(blockOf(i, first));
+        if (block != null)
+            block.set(offsetIn(i, first), null);
+    }
+
+    private static int blockOf(int i, int first) {
+        return 31 - Integer.numberOfLeadingZeros(i / first + 1);
+    }
+
+    private static int offsetIn(int i, int first) {
+        return i - first * ((1 << blockOf(i, first)) - 1);
+    }
+
+    short getActionAt(int i) {
+        return untakenActions[i];
+    }
+
+    // the actions in child index order, read only
+    short[] getActions() {
+        return untakenActions;
+    }
+
+    // index of the next child to expand, negative when fully expanded
+    int takeUntakenIndex() {
+        int i = untakenIndex.getAndIncrement();
+        return i < actionCount
+            ? i
+            : -1;
+    }
+
+    // like takeUntakenIndex, negative once limit children are expanded
+    int takeUntakenIndex(int limit) {
+        if (limit >= actionCount)
+            return takeUntakenIndex();
+        while (true) {
+            int i = untakenIndex.get();
+            if (i >= limit)
+                return -1;
+            if (untakenIndex.compareAndSet(i, i + 1))
+                return i;
+        }
+    }
+
+    long getHash() {
+        return hash;
+    }
+
+    void setHash(long hash) {
+        this.hash = hash;
+    }
+
+    // drops references so recycled nodes do not keep states or other subtrees reachable
+    void clear() {
+        for (int i = 0; i < getChildCount(); i++)
+            clearChild(i);
+        parent = null;
+        state = null;
+    }
+
+    void detachChild(Node<S> child) {
+        for (int i = 0; i < getChildCount(); i++) {
+            if (getChild(i) == child)
+                clearChild(i);
+        }
+    }
+
+    // recycles the subtrees below this node, which becomes an unexpanded leaf again
+    int collapse(NodePool<S> pool) {
+        int recycled = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            Node<S> child = getChild(i);
+            if (child != null) {
+                clearChild(i);
+                recycled += pool.recycle(child);
+            }
+        }
+        untakenIndex.set(0);
+        return recycled;
     }
 
     Node<S> findChildFor(int action) {
-        for (int i = 0; i < children.length(); i++) {
-            Node<S> child = children.get(i);
+        if (actionCount > WIDE) {
+            int i = indexOfAction((short) action);
+            return i >= 0 && i < getChildCount()
+                ? getChild(i)
+                : null;
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            Node<S> child = getChild(i);
             if (child == null)
                 continue;
-            if (child.action == action)
+            // the action stored in a transposed child may be the one of another parent
+            if (untakenActions[i] == action)
                 return child;
         }
         return null;
     }
 
+    int getBookIndex() {
+        return bookIndex;
+    }
+
+    void setBookIndex(int bookIndex) {
+        this.bookIndex = bookIndex;
+    }
+
+    // the position of action among this node's actions, -1 if it is not available
+    int indexOfAction(short action) {
+        ActionIndex index = actionIndex;
+        if (index == null) {
+            index = new ActionIndex(actionCount);
+            for (int i = 0; i < actionCount; i++)
+                index.put(untakenActions[i], i);
+            actionIndex = index;
+        }
+        return index.get(action);
+    }
+
     void releaseParent() {
         parent = null;
     }
@@ -47,23 +310,52 @@ class Node<S extends State> {
     }
 
     boolean isTerminal() {
-        return state.isTerminal();
+        return terminal;
     }
 
     boolean isExpanded() {
-        return untakenIndex.get() < 0;
+        return untakenIndex.get() >= actionCount;
+    }
+
+    // expanded as far as limit children allow
+    boolean isExpanded(int limit) {
+        return untakenIndex.get() >= Math.min(limit, actionCount);
+    }
+
+    Node<S> expand(NodePool<S> pool) {
+        return expand(pool, Integer.MAX_VALUE, null);
     }
 
+    // random shuffles the actions of a child with progressive widening
     @SuppressWarnings("unchecked")
-    Node<S> expand() {
-        int untakenIdx = untakenIndex.getAndDecrement();
+    Node<S> expand(NodePool<S> pool, int limit, Random random) {
+        int untakenIdx = takeUntakenIndex(limit);
         if (untakenIdx < 0)
             return null;
 
         short untakenAction = untakenActions[untakenIdx];
         S actionState = (S) state.takeAction(untakenAction);
-        Node<S> child = new Node<>(this, untakenAction, actionState);
-        children.set(untakenIdx, child);
+        Node<S> child = pool.take(this, untakenAction, actionState, true, random);
+        takePrior(child, untakenIdx);
+        setChild(untakenIdx, child);
+        return child;
+    }
+
+    Node<S> expand(S state, NodePool<S> pool) {
+        return expand(state, pool, Integer.MAX_VALUE, null);
+    }
+
+    // expands without keeping the child's state, state is this node's state and becomes the child's
+    Node<S> expand(S state, NodePool<S> pool, int limit, Random random) {
+        int untakenIdx = takeUntakenIndex(limit);
+        if (untakenIdx < 0)
+            return null;
+
+        short untakenAction = untakenActions[untakenIdx];
+        state.applyAction(untakenAction);
+        Node<S> child = pool.take(this, untakenAction, state, false, random);
+        takePrior(child, untakenIdx);
+        setChild(untakenIdx, child);
         return child;
     }
 
@@ -72,52 +364,224 @@ class Node<S extends State> {
     }
 
     int getPreviousAgent() {
-        return state.getPreviousAgent();
+        return previousAgent;
     }
 
     void updateRewards(double reward) {
-        visits.incrementAndGet();
-        this.rewards += reward;
+        updateRewards(reward, 1);
+    }
+
+    // reward is the sum of count rollouts
+    void updateRewards(double reward, int count) {
+        visits.addAndGet(count);
+        long current;
+        long updated;
+        do {
+            current = rewards;
+            updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + reward);
+        } while (!REWARDS.compareAndSet(this, current, updated));
+    }
+
+    void updateRewardSquares(double square) {
+        long current;
+        long updated;
+        do {
+            current = rewardSquares;
+            updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + square);
+        } while (!REWARD_SQUARES.compareAndSet(this, current, updated));
+    }
+
+    double getRewardSquares() {
+        return Double.longBitsToDouble(rewardSquares);
+    }
+
+    float getPrior() {
+        return prior;
+    }
+
+    void setPrior(float prior) {
+        this.prior = prior;
+    }
+
+    // A child expanded while the evaluation was pending may keep its uniform prior, priors only
+    // steer the search
+    void setPriors(Evaluation<S> evaluation) {
+        float[] priors = new float[actionCount];
+        for (int i = 0; i < actionCount; i++)
+            priors[i] = evaluation.getPrior(i);
+        this.priors = priors;
+        for (int i = 0; i < getChildCount(); i++) {
+            Node<S> child = getChild(i);
+            if (child != null)
+                child.setPrior(priors[i]);
+        }
+    }
+
+    // true for the one thread that is to evaluate the priors
+    boolean claimPriors() {
+        return priors == null && PRIORS_CLAIMED.compareAndSet(this, 0, 1);
+    }
+
+    // after a failed evaluation, a later iteration claims the priors again
+    void releasePriors() {
+        priorsClaimed = 0;
+    }
+
+    private void takePrior(Node<S> child, int i) {
+        float[] priors = this.priors;
+        if (priors != null)
+            child.setPrior(priors[i]);
+    }
+
+    void addVirtualLoss(int virtualLoss) {
+        VIRTUAL_LOSSES.addAndGet(this, virtualLoss);
+    }
+
+    void revertVirtualLoss(int virtualLoss) {
+        VIRTUAL_LOSSES.addAndGet(this, -virtualLoss);
+    }
+
+    int getVirtualLosses() {
+        return virtualLosses;
+    }
+
+    int getVisits() {
+        return visits.get();
+    }
+
+    double getRewards() {
+        return Double.longBitsToDouble(rewards);
     }
 
     boolean isVisited() {
         return visits.get() > 0;
     }
 
-    double getUctValue(double c) {
-        int visits1 = visits.get();
-        return rewards / visits1 + c * Math.sqrt(Math.log(parent.visits.get()) / visits1);
+    private int getPendingVisits() {
+        return visits.get() + virtualLosses;
     }
 
     Node<S> childToExploit() {
-        return getBestChild(NO_EXPLORATION);
+        return getChild(childIndexToExploit());
     }
 
     Node<S> childToExplore() {
-        return getBestChild(EXPLORATION_CONSTANT);
-    }
-
-    private Node<S> getBestChild(double c) {
-        assert isExpanded();
-        Node<S> best = null;
-        while (best == null) {
-            double bestValue = Double.NEGATIVE_INFINITY;
-            for (int i = 0; i < children.length(); i++) {
-                // non spinlocking: seemed worse
-                // Node<Action, StateT> child = children.get(i);
-                // if (child == null || !child.isVisited())
-                // continue;
-
-                Node<S> child = null;
-                while (child == null)
-                    child = children.get(i);
-                while (!child.isVisited()) {}
-
-                double childrenValue = child.getUctValue(c);
-                if (childrenValue > bestValue) {
-                    best = child;
-                    bestValue = childrenValue;
-                }
+        return getChild(childIndexToExplore(DEFAULT_POLICY, null));
+    }
+
+    // the child with the best mean reward, no search runs while the action is taken
+    int childIndexToExploit() {
+        int best = bestUcb1(NO_EXPLORATION);
+        if (best < 0)
+            throw new IllegalStateException("no visited child to take an action from");
+        return best;
+    }
+
+    // metrics count the pauses while no child can be scored yet, null when off
+    int childIndexToExplore(SelectionPolicy policy, WorkerMetrics metrics) {
+        assert untakenIndex.get() > 0;
+        // uncontended selection always finds a scored child on the first scan
+        int best = bestChild(policy);
+        return best >= 0
+            ? best
+            : awaitChildToExplore(policy, metrics);
+    }
+
+    // every child is still being simulated by another thread, back off until one is scored
+    private int awaitChildToExplore(SelectionPolicy policy, WorkerMetrics metrics) {
+        int attempt = 0;
+        while (true) {
+            if (metrics != null)
+                metrics.spinWaited();
+            attempt = Backoff.pause(attempt);
+            int best = bestChild(policy);
+            if (best >= 0)
+                return best;
+        }
+    }
+
+    private int bestChild(SelectionPolicy policy) {
+        double c = policy.getC();
+        switch (policy.getKind()) {
+            case SelectionPolicy.UCB1_TUNED:
+                return bestUcb1Tuned(c);
+            case SelectionPolicy.PUCT:
+                return bestPuct(c);
+            default:
+                return bestUcb1(c);
+        }
+    }
+
+    // The loops below skip children not yet published or without any (pending) visit, they are
+    // being simulated by another thread. The parent's visits come from the selecting node, a
+    // transposed node has several parents. Each returns -1 when no child can be scored yet.
+
+    private int bestUcb1(double c) {
+        double exploration = c * SelectionPolicy.sqrtLog(getPendingVisits());
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            Node<S> child = getChild(i);
+            if (child == null)
+                continue;
+            int childVisits = child.getPendingVisits();
+            if (childVisits == 0)
+                continue;
+
+            double value = child.getRewards() / childVisits
+                + exploration * SelectionPolicy.invSqrt(childVisits);
+            if (value > bestValue) {
+                best = i;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    private int bestUcb1Tuned(double c) {
+        double logVisits = SelectionPolicy.log(getPendingVisits());
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            Node<S> child = getChild(i);
+            if (child == null)
+                continue;
+            int childVisits = child.getPendingVisits();
+            if (childVisits == 0)
+                continue;
+
+            double mean = child.getRewards() / childVisits;
+            double ratio = logVisits / childVisits;
+            double variance = child.getRewardSquares() / childVisits - mean * mean + Math.sqrt(2 * ratio);
+            double value = mean + c * Math.sqrt(ratio * Math.min(.25, variance));
+            if (value > bestValue) {
+                best = i;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    private int bestPuct(double c) {
+        double exploration = c * SelectionPolicy.sqrt(getPendingVisits());
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            Node<S> child = getChild(i);
+            if (child == null)
+                continue;
+            int childVisits = child.getPendingVisits();
+            if (childVisits == 0)
+                continue;
+
+            double value = child.getRewards() / childVisits
+                + exploration * child.getPrior() / (1 + childVisits);
+            if (value > bestValue) {
+                best = i;
+                bestValue = value;
             }
         }
         return best;
@@ -127,10 +591,14 @@ class Node<S extends State> {
         return state;
     }
 
+    void setState(S state) {
+        this.state = state;
+    }
+
     @Override
     public String toString() {
-        return "Node [visits=" + visits + ", rewards=" + rewards + ", v="
-            + getUctValue(NO_EXPLORATION) + "]";
+        return "Node [visits=" + visits + ", rewards=" + getRewards() + ", v="
+            + getRewards() / visits.get() + "]";
     }
 
 }
@@ -0,0 +1,102 @@
+package mcts;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Lock-free stack of recycled nodes linked through Node.nextFree. Nodes are only recycled between
+// searches while search threads only take, so a node being taken is never pushed back
+// concurrently and the stack is free of ABA.
+class NodePool<S extends State> {
+    private final AtomicReference<Node<S>> free = new AtomicReference<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong recycled = new AtomicLong();
+    // children allocated when a node is created, the rest as progressive widening expands them
+    private int firstChildren = Integer.MAX_VALUE;
+
+    void setFirstChildren(int firstChildren) {
+        this.firstChildren = firstChildren;
+    }
+
+    // random shuffles the node's actions with progressive widening, null uses ThreadLocalRandom
+    Node<S> take(Node<S> parent, int action, S state, boolean keepState, Random random) {
+        Node<S> node;
+        do {
+            node = free.get();
+            if (node == null)
+                return new Node<>(parent, action, state, keepState, firstChildren, random);
+        } while (!free.compareAndSet(node, node.getNextFree()));
+        size.decrementAndGet();
+        node.setNextFree(null);
+        node.init(parent, action, state, keepState, firstChildren, random);
+        return node;
+    }
+
+    // returns the number of nodes recycled from the subtree
+    int recycle(Node<S> subtree) {
+        int count = 0;
+        ArrayDeque<Node<S>> pending = new ArrayDeque<>();
+        pending.push(subtree);
+        while (!pending.isEmpty()) {
+            Node<S> node = pending.pop();
+            for (int i = 0; i < node.getChildCount(); i++) {
+                Node<S> child = node.getChild(i);
+                if (child != null)
+                    pending.push(child);
+            }
+            node.clear();
+            push(node);
+            count++;
+        }
+        size.addAndGet(count);
+        recycled.addAndGet(count);
+        return count;
+    }
+
+    // Recycles the nodes reachable from subtree but not from keep, each once although a node of
+    // a DAG can be reachable through several parents. Returns the number of nodes recycled.
+    int recycle(Node<S> subtree, Set<Node<S>> keep) {
+        Set<Node<S>> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Node<S>> pending = new ArrayDeque<>();
+        pending.push(subtree);
+        while (!pending.isEmpty()) {
+            Node<S> node = pending.pop();
+            if (keep.contains(node) || !dropped.add(node))
+                continue;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                Node<S> child = node.getChild(i);
+                if (child != null)
+                    pending.push(child);
+            }
+        }
+        for (Node<S> node : dropped) {
+            node.clear();
+            push(node);
+        }
+        size.addAndGet(dropped.size());
+        recycled.addAndGet(dropped.size());
+        return dropped.size();
+    }
+
+    private void push(Node<S> node) {
+        Node<S> head;
+        do {
+            head = free.get();
+            node.setNextFree(head);
+        } while (!free.compareAndSet(head, node));
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    long getRecycled() {
+        return recycled.get();
+    }
+
+}
@@ -0,0 +1,52 @@
+package mcts;
+
+// Per node data of an ArrayTree indexed by int node ids. The atomic operations are the ones
+// shared between search threads, plain setters are written by the thread creating the node
+// before it is published through an atomic update.
+interface NodeStore {
+
+    int capacity();
+
+    // zeroes the statistics of a node about to be reused
+    void reset(int node);
+
+    int getVisits(int node);
+
+    void addVisits(int node, int count);
+
+    double getRewards(int node);
+
+    void addRewards(int node, double reward);
+
+    int getVirtualLosses(int node);
+
+    void addVirtualLosses(int node, int delta);
+
+    int getUntakenIndex(int node);
+
+    int getAndDecrementUntakenIndex(int node);
+
+    void setUntakenIndex(int node, int untakenIndex);
+
+    short getAction(int node);
+
+    void setAction(int node, short action);
+
+    int getParent(int node);
+
+    void setParent(int node, int parent);
+
+    int getPreviousAgent(int node);
+
+    void setPreviousAgent(int node, int agent);
+
+    int getFirstChild(int node);
+
+    int getChildCount(int node);
+
+    void setChildren(int node, int firstChild, int childCount);
+
+    // copies every field of node from to node to, while no search runs
+    void copy(int from, int to);
+
+}
@@ -0,0 +1,596 @@
+package mcts;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class NodeTree<S extends State> implements Tree<S>, TreeFeatures<S> {
+    private static final int NO_ACTION = -1;
+
+    private final NodePool<S> pool = new NodePool<>();
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final boolean keepStates;
+
+    private Node<S> root;
+    private int rootAction = NO_ACTION;
+    private int virtualLoss;
+    private int maxNodes = Integer.MAX_VALUE;
+    private int leafRollouts = 1;
+    // shares nodes between paths reaching the same position, which turns the tree into a DAG
+    private TranspositionTable<S> table;
+    private ProgressiveWidening widening;
+    // shuffles the actions of new roots, null uses ThreadLocalRandom
+    private Random rootRandom;
+    private SelectionPolicy policy = Node.DEFAULT_POLICY;
+    private boolean rewardSquares;
+    private EvaluationQueue<S> evaluations;
+    private OpeningBook book;
+    private boolean reuse = true;
+    // visits of the root before the last root change, and those of the subtree kept from it
+    private long replacedVisits;
+    private long retainedVisits;
+
+    NodeTree() {
+        this(true);
+    }
+
+    // without keepStates nodes only store their action and the descent replays them from the root
+    NodeTree(boolean keepStates) {
+        this.keepStates = keepStates;
+    }
+
+    Node<S> getRoot() {
+        return root;
+    }
+
+    @Override
+    public void setVirtualLoss(int virtualLoss) {
+        this.virtualLoss = virtualLoss;
+    }
+
+    @Override
+    public void setLeafRollouts(int leafRollouts) {
+        this.leafRollouts = leafRollouts;
+    }
+
+    @Override
+    public void setMaxNodes(int maxNodes) {
+        if (table != null && maxNodes != Integer.MAX_VALUE)
+            throw new IllegalStateException("maxNodes can not be combined with transpositions");
+        this.maxNodes = maxNodes;
+    }
+
+    @Override
+    public void setTranspositions(int capacity) {
+        if (maxNodes != Integer.MAX_VALUE)
+            throw new IllegalStateException("transpositions can not be combined with maxNodes");
+        table = new TranspositionTable<>(capacity);
+        if (root != null) {
+            hashTree();
+            rebuildTable();
+        }
+    }
+
+    // nodes expanded before the table was set have no hash yet, states are replayed from the
+    // root for nodes that do not keep theirs
+    @SuppressWarnings("unchecked")
+    private void hashTree() {
+        ArrayDeque<Node<S>> pending = new ArrayDeque<>();
+        ArrayDeque<S> states = new ArrayDeque<>();
+        pending.push(root);
+        states.push(root.getState());
+        while (!pending.isEmpty()) {
+            Node<S> node = pending.pop();
+            S state = states.pop();
+            node.setHash(state.getHash());
+            for (int i = 0; i < node.getChildCount(); i++) {
+                Node<S> child = node.getChild(i);
+                if (child == null)
+                    continue;
+                pending.push(child);
+                states.push(child.getState() != null
+                    ? child.getState()
+                    : (S) state.takeAction(node.getActionAt(i)));
+            }
+        }
+    }
+
+    @Override
+    public void setEvaluationQueue(EvaluationQueue<S> evaluations) {
+        this.evaluations = evaluations;
+    }
+
+    @Override
+    public void setSelectionPolicy(SelectionPolicy policy) {
+        this.policy = policy;
+        rewardSquares = policy.getKind() == SelectionPolicy.UCB1_TUNED;
+    }
+
+    @Override
+    public void writeSnapshot(Path file, int levels) throws IOException {
+        OpeningBook.write(file, root, levels, rewardSquares);
+    }
+
+    @Override
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    // Starts node with the statistics of its record in the book, as if they had been
+    // backpropagated through it. Its children take theirs as they are expanded.
+    private void openBook(Node<S> node, int bookIndex) {
+        if (bookIndex == OpeningBook.NONE)
+            return;
+        node.setBookIndex(bookIndex);
+        int visits = book.getVisits(bookIndex);
+        if (visits == 0)
+            return;
+        node.updateRewards(book.getRewards(bookIndex), visits);
+        if (rewardSquares)
+            node.updateRewardSquares(book.getRewardSquares(bookIndex));
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        rootRandom = new Random(seed);
+    }
+
+    @Override
+    public void setProgressiveWidening(ProgressiveWidening widening) {
+        this.widening = widening;
+        pool.setFirstChildren(widening == null
+            ? Integer.MAX_VALUE
+            : widening.firstChildren());
+    }
+
+    // the number of children node may have at its current visits
+    private int expansionLimit(Node<S> node) {
+        return widening == null || node.isExpanded()
+            ? Integer.MAX_VALUE
+            : widening.maxChildren(node.getVisits());
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeCount.get();
+    }
+
+    @Override
+    public boolean isFull() {
+        return nodeCount.get() >= maxNodes;
+    }
+
+    @Override
+    public long getRecycledCount() {
+        return pool.getRecycled();
+    }
+
+    @Override
+    public void setRoot(int action, S state) {
+        int bookIndex = OpeningBook.NONE;
+        if (book != null) {
+            bookIndex = root == null || action == NO_ACTION
+                ? book.findRoot(state)
+                : book.findChild(root.getBookIndex(), action);
+        }
+        replacedVisits = 0;
+        retainedVisits = 0;
+        if (root != null) {
+            Node<S> child = reuse
+                ? root.findChildFor(action)
+                : null;
+            if (child != null) {
+                promote(child, action);
+                if (root.getState() == null)
+                    root.setState(state);
+                prune();
+                return;
+            }
+            replacedVisits = root.getVisits();
+            if (table == null)
+                pool.recycle(root);
+            else
+                pool.recycle(root, Collections.emptySet());
+        }
+        root = pool.take(null, NO_ACTION, state, true, rootRandom);
+        rootAction = NO_ACTION;
+        if (book != null)
+            openBook(root, bookIndex);
+        nodeCount.set(1);
+        if (table != null) {
+            table.clear();
+            root.setHash(state.getHash());
+            table.putIfAbsent(root);
+        }
+    }
+
+    @Override
+    public boolean isRootExpanded() {
+        // a full tree can not expand the root any further
+        return root.isExpanded(expansionLimit(root)) || nodeCount.get() >= maxNodes;
+    }
+
+    @Override
+    public void addRootStatistics(ActionStatistics statistics) {
+        for (int i = 0; i < root.getChildCount(); i++) {
+            Node<S> child = root.getChild(i);
+            if (child != null && child.getVisits() > 0)
+                statistics.add(root.getActionAt(i), child.getVisits(), child.getRewards());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public S takeAction() {
+        int i = root.childIndexToExploit();
+        Node<S> actionNode = root.getChild(i);
+        short action = root.getActionAt(i);
+        if (actionNode.getState() == null)
+            actionNode.setState((S) root.getState().takeAction(action));
+        promote(actionNode, action);
+        prune();
+        return actionNode.getState();
+    }
+
+    // the old root and the siblings of child go back to the pool, with transpositions only those
+    // no longer reachable from child
+    private void promote(Node<S> child, int action) {
+        Node<S> oldRoot = root;
+        replacedVisits = oldRoot.getVisits();
+        retainedVisits = child.getVisits();
+        oldRoot.detachChild(child);
+        root = child;
+        rootAction = action;
+        root.releaseParent();
+        if (table == null) {
+            nodeCount.addAndGet(-pool.recycle(oldRoot));
+        } else {
+            Set<Node<S>> reachable = rebuildTable();
+            // a kept node first expanded below a dropped one would point at it once it is reused
+            // and pass the getParent() == node checks by accident
+            for (Node<S> node : reachable) {
+                if (node.getParent() != null && !reachable.contains(node.getParent()))
+                    node.releaseParent();
+            }
+            pool.recycle(oldRoot, reachable);
+        }
+    }
+
+    @Override
+    public void setTreeReuse(boolean reuse) {
+        this.reuse = reuse;
+    }
+
+    @Override
+    public long getReplacedVisits() {
+        return replacedVisits;
+    }
+
+    @Override
+    public long getRetainedVisits() {
+        return retainedVisits;
+    }
+
+    // keeps only the positions reachable from the root and returns their nodes
+    private Set<Node<S>> rebuildTable() {
+        table.clear();
+        Set<Node<S>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Node<S>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<S> node = pending.pop();
+            if (!seen.add(node))
+                continue;
+            table.putIfAbsent(node);
+            for (int i = 0; i < node.getChildCount(); i++) {
+                Node<S> child = node.getChild(i);
+                if (child != null)
+                    pending.push(child);
+            }
+        }
+        nodeCount.set(seen.size());
+        return seen;
+    }
+
+    // collapses the least visited subtrees until half of the budget is free again
+    private void prune() {
+        if (nodeCount.get() < maxNodes)
+            return;
+
+        List<Node<S>> expanded = new ArrayList<>();
+        ArrayDeque<Node<S>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<S> node = pending.pop();
+            boolean hasChildren = false;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                Node<S> child = node.getChild(i);
+                if (child == null)
+                    continue;
+                pending.push(child);
+                hasChildren = true;
+            }
+            if (hasChildren && node != root)
+                expanded.add(node);
+        }
+        expanded.sort(Comparator.comparingInt(Node::getVisits));
+
+        int target = maxNodes / 2;
+        for (Node<S> node : expanded) {
+            if (nodeCount.get() <= target)
+                break;
+            // already recycled with a collapsed ancestor
+            if (node.getParent() == null)
+                continue;
+            nodeCount.addAndGet(-node.collapse(pool));
+        }
+    }
+
+    private boolean reserveNode() {
+        if (nodeCount.incrementAndGet() <= maxNodes)
+            return true;
+        nodeCount.decrementAndGet();
+        return false;
+    }
+
+    @Override
+    public int getRootAction() {
+        return rootAction;
+    }
+
+    @Override
+    public void growTree(Rollout<S> rollout) {
+        List<Node<S>> path = table != null
+            ? rollout.getNodePath()
+            : null;
+        rollout.startIteration();
+        if (evaluations != null && !root.isTerminal() && root.claimPriors())
+            evaluateRootPriors(rollout);
+        if (keepStates) {
+            Node<S> child = selectOrExpand(null, path, rollout);
+            if (evaluations != null && !child.isTerminal()) {
+                evaluateLeaf(child, path, child.getState(), rollout);
+                return;
+            }
+            if (leafRollouts > 1) {
+                simulateLeaf(child, path, child.getState(), rollout);
+                return;
+            }
+            S terminalState = rollout.simulate(child.getState());
+            rollout.simulated();
+            backPropagate(child, path, terminalState, rollout);
+            rollout.backPropagated();
+        } else {
+            S state = rollout.startPath(root.getState());
+            Node<S> child = selectOrExpand(state, path, rollout);
+            if (evaluations != null && !child.isTerminal()) {
+                evaluateLeaf(child, path, state, rollout);
+                return;
+            }
+            if (leafRollouts > 1) {
+                simulateLeaf(child, path, state, rollout);
+                return;
+            }
+            S terminalState = rollout.play(state);
+            rollout.simulated();
+            backPropagate(child, path, terminalState, rollout);
+            rollout.backPropagated();
+        }
+    }
+
+    // Waits for the evaluation of leaf, parked with the virtual loss of the path still applied,
+    // then backpropagates its value instead of a rollout's reward. The value is for the agent
+    // that moved into leaf, the other agents get 1 - value as in a two player game.
+    private void evaluateLeaf(Node<S> leaf, List<Node<S>> path, S state, Rollout<S> rollout) {
+        double value;
+        try {
+            value = evaluatePriors(leaf, state, rollout);
+        } catch (RuntimeException e) {
+            revertVirtualLoss(leaf, path);
+            throw e;
+        }
+        rollout.simulated();
+
+        int agent = leaf.getPreviousAgent();
+        if (path != null) {
+            for (int i = path.size() - 1; i >= 0; i--)
+                updateRewards(path.get(i), agent, value);
+        } else {
+            for (Node<S> node = leaf; node != null; node = node.getParent())
+                updateRewards(node, agent, value);
+        }
+        rollout.backPropagated();
+    }
+
+    // the other threads search without the priors meanwhile, as below a pending leaf
+    private void evaluateRootPriors(Rollout<S> rollout) {
+        try {
+            evaluatePriors(root, root.getState(), rollout);
+        } catch (RuntimeException e) {
+            root.releasePriors();
+            throw e;
+        }
+    }
+
+    // the root is never a leaf, it is evaluated for the priors of its children only
+    private double evaluatePriors(Node<S> node, S state, Rollout<S> rollout) {
+        Evaluation<S> evaluation = rollout.getEvaluation();
+        evaluation.reset(state, node.getActions(), node.getActionCount());
+        evaluations.evaluate(evaluation);
+        double value = evaluation.getValue();
+        node.setPriors(evaluation);
+        return value;
+    }
+
+    // a failed iteration backpropagates nothing, its nodes must not stay pending
+    private void revertVirtualLoss(Node<S> leaf, List<Node<S>> path) {
+        if (virtualLoss == 0)
+            return;
+        if (path != null) {
+            for (Node<S> node : path)
+                node.revertVirtualLoss(virtualLoss);
+        } else {
+            for (Node<S> node = leaf; node != null; node = node.getParent())
+                node.revertVirtualLoss(virtualLoss);
+        }
+    }
+
+    private void updateRewards(Node<S> node, int agent, double value) {
+        updateRewards(node, node.getPreviousAgent() == agent
+            ? value
+            : 1 - value);
+    }
+
+    // plays leafRollouts rollouts from leaf and backpropagates their sums once
+    private void simulateLeaf(Node<S> leaf, List<Node<S>> path, S state, Rollout<S> rollout) {
+        rollout.clearAgents();
+        if (path != null) {
+            for (Node<S> node : path)
+                rollout.addAgent(node.getPreviousAgent());
+        } else {
+            for (Node<S> node = leaf; node != null; node = node.getParent())
+                rollout.addAgent(node.getPreviousAgent());
+        }
+        rollout.simulate(state, leafRollouts);
+        rollout.simulated();
+
+        if (path != null) {
+            for (int i = path.size() - 1; i >= 0; i--)
+                updateRewards(path.get(i), rollout);
+        } else {
+            for (Node<S> node = leaf; node != null; node = node.getParent())
+                updateRewards(node, rollout);
+        }
+        rollout.backPropagated();
+    }
+
+    private void updateRewards(Node<S> node, Rollout<S> rollout) {
+        double reward = rollout.getRewardSum(node.getPreviousAgent());
+        node.updateRewards(reward, leafRollouts);
+        // only the sum of the leaf rollouts is known, as if each had the mean reward
+        if (rewardSquares)
+            node.updateRewardSquares(reward * reward / leafRollouts);
+        if (virtualLoss > 0)
+            node.revertVirtualLoss(virtualLoss);
+    }
+
+    // state is the scratch state replayed along the path when nodes do not keep their states,
+    // path collects the selected nodes when they can have several parents
+    private Node<S> selectOrExpand(S state, List<Node<S>> path, Rollout<S> rollout) {
+        if (path != null)
+            path.clear();
+        Node<S> node = root;
+        int depth = 0;
+        select(node, path);
+        while (!node.isTerminal()) {
+            int limit = expansionLimit(node);
+            if (!node.isExpanded(limit)) {
+                // a full tree only updates the statistics of its existing nodes
+                if (!reserveNode())
+                    break;
+                Node<S> expandedNode;
+                if (table != null) {
+                    expandedNode = expandTransposed(node, state, limit, rollout);
+                } else {
+                    expandedNode = state == null
+                        ? node.expand(pool, limit, rollout.getRandom())
+                        : node.expand(state, pool, limit, rollout.getRandom());
+                    if (expandedNode != null)
+                        rollout.expanded(true);
+                }
+                if (expandedNode != null) {
+                    // a transposed child already has its statistics
+                    if (book != null && expandedNode.getParent() == node)
+                        openBook(expandedNode,
+                            book.findChild(node.getBookIndex(), expandedNode.getAction()));
+                    select(expandedNode, path);
+                    rollout.selected(depth + 1);
+                    return expandedNode;
+                }
+                nodeCount.decrementAndGet();
+            }
+            int i = node.childIndexToExplore(policy, rollout.getMetrics());
+            if (state != null)
+                state.applyAction(node.getActionAt(i));
+            node = node.getChild(i);
+            depth++;
+            select(node, path);
+        }
+        rollout.selected(depth);
+        return node;
+    }
+
+    // links the node of an already known position instead of creating a new one
+    @SuppressWarnings("unchecked")
+    private Node<S> expandTransposed(Node<S> node, S state, int limit, Rollout<S> rollout) {
+        int untakenIdx = node.takeUntakenIndex(limit);
+        if (untakenIdx < 0)
+            return null;
+
+        short action = node.getActionAt(untakenIdx);
+        S childState;
+        if (state == null) {
+            childState = (S) node.getState().takeAction(action);
+        } else {
+            state.applyAction(action);
+            childState = state;
+        }
+        long hash = childState.getHash();
+        Node<S> child = table.get(hash);
+        if (child == null) {
+            Node<S> created = pool.take(node, action, childState, keepStates, rollout.getRandom());
+            created.setHash(hash);
+            child = table.putIfAbsent(created);
+            // a full table neighbourhood keeps the new node out of the table
+            if (child == null)
+                child = created;
+        }
+        // the node reserved for this expansion was not needed
+        if (child.getParent() != node)
+            nodeCount.decrementAndGet();
+        node.setChild(untakenIdx, child);
+        rollout.expanded(child.getParent() == node);
+        return child;
+    }
+
+    private void select(Node<S> node, List<Node<S>> path) {
+        if (virtualLoss > 0)
+            node.addVirtualLoss(virtualLoss);
+        if (path != null)
+            path.add(node);
+    }
+
+    private void backPropagate(Node<S> node, List<Node<S>> path, S terminalState,
+                               Rollout<S> rollout) {
+        if (path != null) {
+            for (int i = path.size() - 1; i >= 0; i--)
+                updateRewards(path.get(i), terminalState, rollout);
+            return;
+        }
+        while (node != null) {
+            updateRewards(node, terminalState, rollout);
+            node = node.getParent();
+        }
+    }
+
+    private void updateRewards(Node<S> node, S terminalState, Rollout<S> rollout) {
+        updateRewards(node, rollout.getReward(terminalState, node.getPreviousAgent()));
+    }
+
+    private void updateRewards(Node<S> node, double reward) {
+        node.updateRewards(reward);
+        if (rewardSquares)
+            node.updateRewardSquares(reward * reward);
+        if (virtualLoss > 0)
+            node.revertVirtualLoss(virtualLoss);
+    }
+
+}
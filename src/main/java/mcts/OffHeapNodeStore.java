@@ -0,0 +1,300 @@
+package mcts;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Nodes as fixed size records in direct buffers outside the heap, so GC work does not grow with
+// the tree. A buffer is int indexed, so the records span segments of 2^segmentBits nodes and a
+// node's long byte offset splits into its segment and a position in it. Atomic updates go through
+// ByteBuffer view VarHandles, only available from Java 9, looked up reflectively as the build
+// targets Java 8. Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to -Xmx.
+class OffHeapNodeStore implements NodeStore {
+    static final int NODE_BYTES = 40;
+    // ids stay ints, and far enough from overflow for a children block claimed past capacity
+    static final long MAX_BYTES = (long) NODE_BYTES << 30;
+
+    // 640 MB per segment
+    private static final int SEGMENT_BITS = 24;
+
+    private static final int REWARDS = 0;
+    private static final int VISITS = 8;
+    private static final int VIRTUAL_LOSSES = 12;
+    private static final int UNTAKEN_INDEX = 16;
+    private static final int PARENT = 20;
+    private static final int FIRST_CHILD = 24;
+    private static final int CHILD_COUNT = 28;
+    private static final int PREVIOUS_AGENT = 32;
+    private static final int ACTION = 36;
+
+    private static final MethodHandle ALIGNED_SLICE;
+    private static final MethodHandle GET_INT_VOLATILE;
+    private static final MethodHandle SET_INT_VOLATILE;
+    private static final MethodHandle SET_INT_RELEASE;
+    private static final MethodHandle GET_AND_ADD_INT;
+    private static final MethodHandle GET_LONG_VOLATILE;
+    private static final MethodHandle SET_LONG_RELEASE;
+    private static final MethodHandle COMPARE_AND_SET_LONG;
+
+    static {
+        MethodHandle[] ints = accessModes(int[].class,
+            "GET_VOLATILE", "SET_VOLATILE", "SET_RELEASE", "GET_AND_ADD");
+        MethodHandle[] longs = accessModes(long[].class,
+            "GET_VOLATILE", "SET_RELEASE", "COMPARE_AND_SET");
+        GET_INT_VOLATILE = ints[0];
+        SET_INT_VOLATILE = ints[1];
+        SET_INT_RELEASE = ints[2];
+        GET_AND_ADD_INT = ints[3];
+        GET_LONG_VOLATILE = longs[0];
+        SET_LONG_RELEASE = longs[1];
+        COMPARE_AND_SET_LONG = longs[2];
+        ALIGNED_SLICE = findAlignedSlice();
+    }
+
+    // they keep the memory reachable until the store is collected
+    private final ByteBuffer[] segments;
+    private final int segmentBits;
+    private final int capacity;
+
+    OffHeapNodeStore(long maxBytes) {
+        this(maxBytes, SEGMENT_BITS);
+    }
+
+    // smaller segments let tests cross segment boundaries in little memory
+    OffHeapNodeStore(long maxBytes, int segmentBits) {
+        if (!isSupported())
+            throw new UnsupportedOperationException("off-heap trees need Java 9 or later");
+        if (maxBytes < NODE_BYTES || maxBytes > MAX_BYTES)
+            throw new IllegalArgumentException(
+                "maxBytes must be between " + NODE_BYTES + " and " + MAX_BYTES + ": " + maxBytes);
+        capacity = (int) (maxBytes / NODE_BYTES);
+        this.segmentBits = segmentBits;
+        int segmentNodes = 1 << segmentBits;
+        segments = new ByteBuffer[(capacity + segmentNodes - 1) >>> segmentBits];
+        for (int i = 0; i < segments.length; i++) {
+            int nodes = Math.min(segmentNodes, capacity - (i << segmentBits));
+            segments[i] = allocate(nodes * NODE_BYTES);
+        }
+    }
+
+    static boolean isSupported() {
+        return ALIGNED_SLICE != null && COMPARE_AND_SET_LONG != null;
+    }
+
+    // longs are updated with CAS, which needs 8 byte alignment
+    private static ByteBuffer allocate(int bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes + Long.BYTES - 1);
+        try {
+            ByteBuffer aligned = (ByteBuffer) ALIGNED_SLICE.invokeExact(buffer, Long.BYTES);
+            return aligned.order(ByteOrder.nativeOrder());
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ByteBuffer segment(int node) {
+        return segments[node >>> segmentBits];
+    }
+
+    // the position of a field in its node's segment
+    private int index(int node, int field) {
+        return (node & (1 << segmentBits) - 1) * NODE_BYTES + field;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void reset(int node) {
+        ByteBuffer segment = segment(node);
+        try {
+            SET_LONG_RELEASE.invokeExact(segment, index(node, REWARDS), 0L);
+            SET_INT_RELEASE.invokeExact(segment, index(node, VISITS), 0);
+            SET_INT_RELEASE.invokeExact(segment, index(node, VIRTUAL_LOSSES), 0);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int getVisits(int node) {
+        return getIntVolatile(node, VISITS);
+    }
+
+    @Override
+    public void addVisits(int node, int count) {
+        getAndAddInt(node, VISITS, count);
+    }
+
+    @Override
+    public double getRewards(int node) {
+        return Double.longBitsToDouble(getLongVolatile(segment(node), index(node, REWARDS)));
+    }
+
+    @Override
+    public void addRewards(int node, double reward) {
+        ByteBuffer segment = segment(node);
+        int index = index(node, REWARDS);
+        long current;
+        do {
+            current = getLongVolatile(segment, index);
+        } while (!compareAndSetLong(
+            segment,
+            index,
+            current,
+            Double.doubleToRawLongBits(Double.longBitsToDouble(current) + reward)));
+    }
+
+    @Override
+    public int getVirtualLosses(int node) {
+        return getIntVolatile(node, VIRTUAL_LOSSES);
+    }
+
+    @Override
+    public void addVirtualLosses(int node, int delta) {
+        getAndAddInt(node, VIRTUAL_LOSSES, delta);
+    }
+
+    @Override
+    public int getUntakenIndex(int node) {
+        return getIntVolatile(node, UNTAKEN_INDEX);
+    }
+
+    @Override
+    public int getAndDecrementUntakenIndex(int node) {
+        return getAndAddInt(node, UNTAKEN_INDEX, -1);
+    }
+
+    @Override
+    public void setUntakenIndex(int node, int untakenIndex) {
+        try {
+            SET_INT_VOLATILE.invokeExact(segment(node), index(node, UNTAKEN_INDEX), untakenIndex);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public short getAction(int node) {
+        return segment(node).getShort(index(node, ACTION));
+    }
+
+    @Override
+    public void setAction(int node, short action) {
+        segment(node).putShort(index(node, ACTION), action);
+    }
+
+    @Override
+    public int getParent(int node) {
+        return segment(node).getInt(index(node, PARENT));
+    }
+
+    @Override
+    public void setParent(int node, int parent) {
+        segment(node).putInt(index(node, PARENT), parent);
+    }
+
+    @Override
+    public int getPreviousAgent(int node) {
+        return segment(node).getInt(index(node, PREVIOUS_AGENT));
+    }
+
+    @Override
+    public void setPreviousAgent(int node, int agent) {
+        segment(node).putInt(index(node, PREVIOUS_AGENT), agent);
+    }
+
+    @Override
+    public int getFirstChild(int node) {
+        return segment(node).getInt(index(node, FIRST_CHILD));
+    }
+
+    @Override
+    public int getChildCount(int node) {
+        return segment(node).getInt(index(node, CHILD_COUNT));
+    }
+
+    @Override
+    public void setChildren(int node, int firstChild, int childCount) {
+        ByteBuffer segment = segment(node);
+        segment.putInt(index(node, FIRST_CHILD), firstChild);
+        segment.putInt(index(node, CHILD_COUNT), childCount);
+    }
+
+    @Override
+    public void copy(int from, int to) {
+        ByteBuffer source = segment(from);
+        ByteBuffer target = segment(to);
+        for (int field = 0; field < NODE_BYTES; field += Long.BYTES)
+            target.putLong(index(to, field), source.getLong(index(from, field)));
+    }
+
+    private int getIntVolatile(int node, int field) {
+        try {
+            return (int) GET_INT_VOLATILE.invokeExact(segment(node), index(node, field));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int getAndAddInt(int node, int field, int delta) {
+        try {
+            return (int) GET_AND_ADD_INT.invokeExact(segment(node), index(node, field), delta);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long getLongVolatile(ByteBuffer segment, int index) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact(segment, index);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean compareAndSetLong(ByteBuffer segment, int index, long expected, long value) {
+        try {
+            return (boolean) COMPARE_AND_SET_LONG.invokeExact(segment, index, expected, value);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // MethodHandles.byteBufferViewVarHandle(viewArrayClass, nativeOrder()).toMethodHandle(mode)
+    // for each mode, nulls before Java 9
+    private static MethodHandle[] accessModes(Class<?> viewArrayClass, String... modes) {
+        MethodHandle[] handles = new MethodHandle[modes.length];
+        try {
+            Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+            Class<?> accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Object view = lookup.findStatic(MethodHandles.class, "byteBufferViewVarHandle",
+                    MethodType.methodType(varHandle, Class.class, ByteOrder.class))
+                .invoke(viewArrayClass, ByteOrder.nativeOrder());
+            MethodHandle toMethodHandle = lookup.findVirtual(varHandle, "toMethodHandle",
+                MethodType.methodType(MethodHandle.class, accessMode));
+            for (int i = 0; i < modes.length; i++) {
+                Object mode = accessMode.getField(modes[i]).get(null);
+                handles[i] = (MethodHandle) toMethodHandle.invoke(view, mode);
+            }
+            return handles;
+        } catch (Throwable e) {
+            return new MethodHandle[modes.length];
+        }
+    }
+
+    private static MethodHandle findAlignedSlice() {
+        try {
+            return MethodHandles.lookup().findVirtual(ByteBuffer.class, "alignedSlice",
+                MethodType.methodType(ByteBuffer.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+package mcts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// The top levels of a searched tree, memory mapped from a snapshot file. Nodes are fixed size
+// records in breadth first order, the children of a node are contiguous and sorted by action,
+// so a tree finds the record of a new node with a binary search among its parent's children.
+// Records are read in place when the tree creates their nodes, the file is never copied.
+//
+// Layout, big endian: a header of magic, version, node count, levels, the root's action count,
+// 1 if the reward squares were recorded else 0 (ints) and the root's hash (long), then per node
+// its first child, child count, visits (ints), action (short), 2 bytes unused, rewards and
+// reward squares (doubles). The root's state must hash, the book recognizes it by its hash.
+public final class OpeningBook {
+    static final int NONE = -1;
+
+    private static final int MAGIC = 0x4D435453;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int NODE_BYTES = 32;
+
+    private static final int FIRST_CHILD = 0;
+    private static final int CHILD_COUNT = 4;
+    private static final int VISITS = 8;
+    private static final int ACTION = 12;
+    private static final int REWARDS = 16;
+    private static final int REWARD_SQUARES = 24;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int levels;
+    private final int rootActions;
+    private final boolean squares;
+    private final long rootHash;
+
+    private OpeningBook(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.levels = buffer.getInt(12);
+        this.rootActions = buffer.getInt(16);
+        this.squares = buffer.getInt(20) != 0;
+        this.rootHash = buffer.getLong(24);
+    }
+
+    // maps a snapshot written by Mcts.writeSnapshot, the mapping outlives the open channel
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE)
+                throw new IOException("not an Mcts snapshot: " + file);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int size = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || size < 1 || length != HEADER_BYTES + (long) size * NODE_BYTES)
+                throw new IOException("not an Mcts snapshot: " + file);
+            return new OpeningBook(buffer);
+        }
+    }
+
+    // Writes root and its visited descendants up to levels below it. squares tells whether the
+    // nodes summed the squares of their rewards, only UCB1-Tuned searches do.
+    static <S extends State> void write(Path file, Node<S> root, int levels, boolean squares)
+        throws IOException {
+        if (levels < 0)
+            throw new IllegalArgumentException("levels must be >= 0: " + levels);
+        long hash;
+        try {
+            hash = root.getState().getHash();
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalArgumentException("opening books need State.getHash() for the root", e);
+        }
+        List<Node<S>> nodes = new ArrayList<>();
+        List<Short> actions = new ArrayList<>();
+        List<int[]> children = new ArrayList<>();
+        nodes.add(root);
+        actions.add((short) NONE);
+        int levelEnd = 1;
+        int level = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i == levelEnd) {
+                level++;
+                levelEnd = nodes.size();
+            }
+            int first = nodes.size();
+            if (level < levels)
+                addVisitedChildren(nodes.get(i), nodes, actions);
+            children.add(new int[] { first, nodes.size() - first });
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + nodes.size() * NODE_BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nodes.size()).putInt(levels)
+            .putInt(root.getActionCount()).putInt(squares ? 1 : 0).putLong(hash);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node<S> node = nodes.get(i);
+            int[] range = children.get(i);
+            buffer.putInt(range[1] > 0 ? range[0] : NONE)
+                .putInt(range[1])
+                .putInt(node.getVisits())
+                .putShort(actions.get(i))
+                .putShort((short) 0)
+                .putDouble(node.getRewards())
+                .putDouble(squares ? node.getRewardSquares() : 0);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    private static <S extends State> void addVisitedChildren(
+        Node<S> node, List<Node<S>> nodes, List<Short> actions) {
+        int start = nodes.size();
+        for (int i = 0; i < node.getChildCount(); i++) {
+            Node<S> child = node.getChild(i);
+            if (child == null || child.getVisits() == 0)
+                continue;
+            // insertion sort by action, nodes have few children
+            short action = node.getActionAt(i);
+            int at = nodes.size();
+            while (at > start && actions.get(at - 1) > action)
+                at--;
+            nodes.add(at, child);
+            actions.add(at, action);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // levels of nodes below the root
+    public int getLevels() {
+        return levels;
+    }
+
+    // the root's record if state is the position the book was written from, as far as its
+    // action count and hash tell, a state without a hash is never found
+    int findRoot(State state) {
+        if (state.getAvailableActions(new short[0]) != rootActions)
+            return NONE;
+        try {
+            return state.getHash() == rootHash
+                ? 0
+                : NONE;
+        } catch (UnsupportedOperationException e) {
+            return NONE;
+        }
+    }
+
+    // the record of the child of node reached by action, NONE if it was not written
+    int findChild(int node, int action) {
+        if (node == NONE)
+            return NONE;
+        int low = getInt(node, FIRST_CHILD);
+        int high = low + getInt(node, CHILD_COUNT) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = getAction(middle);
+            if (found < action)
+                low = middle + 1;
+            else if (found > action)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return NONE;
+    }
+
+    short getAction(int node) {
+        return buffer.getShort(offset(node) + ACTION);
+    }
+
+    int getVisits(int node) {
+        return getInt(node, VISITS);
+    }
+
+    double getRewards(int node) {
+        return buffer.getDouble(offset(node) + REWARDS);
+    }
+
+    // Without recorded squares, the largest sum rewards in [0, 1] allow, the variance of a coin
+    // flip with the node's mean. UCB1-Tuned then explores book nodes as much as it can, rather
+    // than treating them as certain.
+    double getRewardSquares(int node) {
+        return squares
+            ? buffer.getDouble(offset(node) + REWARD_SQUARES)
+            : getRewards(node);
+    }
+
+    private int getInt(int node, int field) {
+        return buffer.getInt(offset(node) + field);
+    }
+
+    private static int offset(int node) {
+        return HEADER_BYTES + node * NODE_BYTES;
+    }
+
+}
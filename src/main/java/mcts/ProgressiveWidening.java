@@ -0,0 +1,29 @@
+package mcts;
+
+// Lets a node with n visits have ceil(c * (n + 1)^alpha) children, so wide nodes are searched
+// deeper before all their actions are tried
+final class ProgressiveWidening {
+    private final double c;
+    private final double alpha;
+
+    ProgressiveWidening(double c, double alpha) {
+        if (c < 1)
+            throw new IllegalArgumentException("c must be >= 1: " + c);
+        if (alpha <= 0 || alpha >= 1)
+            throw new IllegalArgumentException("alpha must be between 0 and 1: " + alpha);
+        this.c = c;
+        this.alpha = alpha;
+    }
+
+    int maxChildren(int visits) {
+        double children = alpha == .5
+            ? c * Math.sqrt(visits + 1)
+            : c * Math.pow(visits + 1, alpha);
+        return (int) Math.min(Math.ceil(children), Integer.MAX_VALUE);
+    }
+
+    int firstChildren() {
+        return maxChildren(0);
+    }
+
+}
@@ -0,0 +1,60 @@
+package mcts;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Root statistics of every action taken by the Mcts that share this log: one line per action
+// with the name of the Mcts, the action taken and the visits and rewards of each root action.
+// Seeded single threaded searches of the same workload log the same lines, so two runs can be
+// compared line by line before comparing their speed or strength.
+public final class ReplayLog {
+    private final List<String> lines = new ArrayList<>();
+
+    synchronized void record(String name, int action, ActionStatistics statistics) {
+        short[] actions = new short[statistics.size()];
+        for (int i = 0; i < actions.length; i++)
+            actions[i] = statistics.getAction(i);
+        Arrays.sort(actions);
+
+        StringBuilder line = new StringBuilder()
+            .append(name).append(' ')
+            .append(lines.size()).append(' ')
+            .append(action);
+        for (short a : actions) {
+            line.append(' ').append(a)
+                .append(':').append(statistics.getVisits(a))
+                .append(':').append(statistics.getRewards(a));
+        }
+        lines.add(line.toString());
+    }
+
+    public synchronized List<String> getLines() {
+        return new ArrayList<>(lines);
+    }
+
+    public synchronized void clear() {
+        lines.clear();
+    }
+
+    // the index of the first line that differs from other's, -1 if both logs are the same
+    public int firstDifference(ReplayLog other) {
+        List<String> mine = getLines();
+        List<String> theirs = other.getLines();
+        int common = Math.min(mine.size(), theirs.size());
+        for (int i = 0; i < common; i++) {
+            if (!mine.get(i).equals(theirs.get(i)))
+                return i;
+        }
+        return mine.size() == theirs.size()
+            ? -1
+            : common;
+    }
+
+    public void writeTo(Appendable out) throws IOException {
+        for (String line : getLines())
+            out.append(line).append('\n');
+    }
+
+}
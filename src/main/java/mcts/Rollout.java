@@ -0,0 +1,202 @@
+package mcts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+class Rollout<S extends State> {
+    private final Random random;
+    private final int worker;
+    // null plays uniformly at random
+    private final RolloutPolicy<S> policy;
+    // null when metrics are off
+    private final WorkerMetrics metrics;
+
+    private final ArrayList<Node<S>> nodePath = new ArrayList<>();
+
+    private short[] actions = new short[0];
+    private S scratch;
+    private S path;
+    private Evaluation<S> evaluation;
+
+    // rewards of several rollouts summed per agent, for the agents of the selected path
+    private int[] agents = new int[2];
+    private double[] rewardSums = new double[2];
+    private int agentCount;
+
+    Rollout(Random random) {
+        this(random, 0);
+    }
+
+    Rollout(Random random, int worker) {
+        this(random, worker, null);
+    }
+
+    Rollout(Random random, int worker, RolloutPolicy<S> policy) {
+        this(random, worker, policy, null);
+    }
+
+    Rollout(Random random, int worker, RolloutPolicy<S> policy, WorkerMetrics metrics) {
+        this.random = random;
+        this.worker = worker;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    Random getRandom() {
+        return random;
+    }
+
+    // index of the search thread in think()
+    int getWorker() {
+        return worker;
+    }
+
+    // fills the action buffer with the actions available in state and returns their count
+    int fillActions(State state) {
+        int count = state.getAvailableActions(actions);
+        if (count > actions.length) {
+            actions = new short[count];
+            state.getAvailableActions(actions);
+        }
+        return count;
+    }
+
+    WorkerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // The calls below record this iteration's phases in the metrics, if any. Trees call
+    // startIteration first, then selected, simulated and backPropagated in this order.
+
+    void startIteration() {
+        if (metrics != null)
+            metrics.startIteration();
+    }
+
+    void selected(int depth) {
+        if (metrics != null)
+            metrics.selected(depth);
+    }
+
+    void simulated() {
+        if (metrics != null)
+            metrics.simulated();
+    }
+
+    void backPropagated() {
+        if (metrics != null)
+            metrics.backPropagated();
+    }
+
+    // allocated is false when the child was found in the transposition table
+    void expanded(boolean allocated) {
+        if (metrics != null) {
+            metrics.expanded();
+            if (allocated)
+                metrics.allocated();
+        }
+    }
+
+    short[] getActionBuffer() {
+        return actions;
+    }
+
+    // the leaf this thread waits for in an EvaluationQueue
+    Evaluation<S> getEvaluation() {
+        if (evaluation == null)
+            evaluation = new Evaluation<>();
+        return evaluation;
+    }
+
+    // nodes selected in this iteration, for trees whose nodes can have several parents
+    ArrayList<Node<S>> getNodePath() {
+        return nodePath;
+    }
+
+    // scratch copy of from for trees that replay actions during descent
+    @SuppressWarnings("unchecked")
+    S startPath(S from) {
+        path = (S) from.copyTo(path);
+        return path;
+    }
+
+    @SuppressWarnings("unchecked")
+    S simulate(S from) {
+        scratch = (S) from.copyTo(scratch);
+        return play(scratch);
+    }
+
+    void clearAgents() {
+        agentCount = 0;
+    }
+
+    void addAgent(int agent) {
+        for (int i = 0; i < agentCount; i++) {
+            if (agents[i] == agent)
+                return;
+        }
+        if (agentCount == agents.length) {
+            agents = Arrays.copyOf(agents, agentCount * 2);
+            rewardSums = Arrays.copyOf(rewardSums, agentCount * 2);
+        }
+        agents[agentCount++] = agent;
+    }
+
+    // plays count rollouts from from and sums the rewards of the added agents
+    void simulate(S from, int count) {
+        Arrays.fill(rewardSums, 0, agentCount, 0);
+        for (int c = 0; c < count; c++) {
+            S terminalState = simulate(from);
+            for (int i = 0; i < agentCount; i++)
+                rewardSums[i] += getReward(terminalState, agents[i]);
+        }
+    }
+
+    double getRewardSum(int agent) {
+        for (int i = 0; i < agentCount; i++) {
+            if (agents[i] == agent)
+                return rewardSums[i];
+        }
+        throw new IllegalArgumentException("agent was not added: " + agent);
+    }
+
+    // plays state to the end, or until the policy cuts it off, in place
+    S play(S state) {
+        if (policy != null)
+            return playPolicy(state);
+        int plies = 0;
+        while (!state.isTerminal()) {
+            int count = fillActions(state);
+            short action = actions[random.nextInt(count)];
+            state.applyAction(action);
+            plies++;
+        }
+        if (metrics != null)
+            metrics.addRolloutPlies(plies);
+        return state;
+    }
+
+    private S playPolicy(S state) {
+        int maxPlies = policy.getMaxPlies();
+        int plies = 0;
+        for (; plies < maxPlies && !state.isTerminal(); plies++) {
+            int count = fillActions(state);
+            short action = policy.chooseAction(state, actions, count, random);
+            state.applyAction(action);
+            policy.onAction(state, action);
+        }
+        policy.onRolloutEnd(state);
+        if (metrics != null)
+            metrics.addRolloutPlies(plies);
+        return state;
+    }
+
+    // the reward of agent in the state a rollout ended in
+    double getReward(S state, int agent) {
+        return policy == null
+            ? state.getRewardFor(agent)
+            : policy.getReward(state, agent);
+    }
+
+}
@@ -0,0 +1,32 @@
+package mcts;
+
+import java.util.List;
+import java.util.Random;
+
+// Reference evaluator in plain Java: the value of a leaf is the mean reward of random rollouts
+// and its priors stay uniform, which searches like rollout based MCTS through the batching
+// pipeline. A trained network plugs in the same way.
+public class RolloutEvaluator<S extends State> implements Evaluator<S> {
+    private final Rollout<S> rollout;
+    private final int rollouts;
+
+    public RolloutEvaluator(Random random, int rollouts) {
+        if (rollouts < 1)
+            throw new IllegalArgumentException("rollouts must be >= 1: " + rollouts);
+        this.rollout = new Rollout<>(random);
+        this.rollouts = rollouts;
+    }
+
+    @Override
+    public void evaluate(List<Evaluation<S>> batch) {
+        for (Evaluation<S> evaluation : batch) {
+            S state = evaluation.getState();
+            int agent = state.getPreviousAgent();
+            double sum = 0;
+            for (int i = 0; i < rollouts; i++)
+                sum += rollout.getReward(rollout.simulate(state), agent);
+            evaluation.setValue(sum / rollouts);
+        }
+    }
+
+}
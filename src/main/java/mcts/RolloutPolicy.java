@@ -0,0 +1,36 @@
+package mcts;
+
+import java.util.Random;
+
+// Chooses the actions of rollouts. Every search thread gets its own instance, so a policy can
+// keep mutable statistics without synchronization. Without a policy rollouts play uniformly at
+// random.
+public interface RolloutPolicy<S extends State> {
+
+    // one of actions[0, count) to play in state
+    short chooseAction(S state, short[] actions, int count, Random random);
+
+    // called after action was played, state.getPreviousAgent() played it
+    default void onAction(S state, short action) {}
+
+    // called with the state the rollout ended in, terminal or cut off
+    default void onRolloutEnd(S state) {}
+
+    // rollouts stop after this many actions and take their rewards from evaluate
+    default int getMaxPlies() {
+        return Integer.MAX_VALUE;
+    }
+
+    // reward in [0, 1] for agent of a state where the rollout was cut off
+    default double evaluate(S state, int agent) {
+        return .5;
+    }
+
+    // the reward of agent at the end of a rollout
+    default double getReward(S state, int agent) {
+        return state.isTerminal()
+            ? state.getRewardFor(agent)
+            : evaluate(state, agent);
+    }
+
+}
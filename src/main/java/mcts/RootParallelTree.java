@@ -0,0 +1,135 @@
+package mcts;
+
+import java.util.List;
+
+// Trees searched independently from the same root, worker w grows tree w % trees.size(). With
+// as many trees as threads this is root parallelism, with fewer each tree is shared by the
+// workers of equal remainder, a grouping by worker number that knows nothing of sockets or NUMA
+// nodes. The trees share nothing while they grow, their root children statistics are summed
+// only when read: to choose the action and in the early stop check of searchAsync.
+class RootParallelTree<S extends State> implements Tree<S> {
+    private final ActionStatistics statistics = new ActionStatistics();
+    private final List<Tree<S>> trees;
+
+    private S rootState;
+    private int rootAction;
+
+    RootParallelTree(List<Tree<S>> trees) {
+        this.trees = trees;
+    }
+
+    @Override
+    public void setRoot(int action, S state) {
+        for (Tree<S> tree : trees)
+            tree.setRoot(action, state);
+        rootState = state;
+        rootAction = action;
+    }
+
+    @Override
+    public boolean isRootExpanded() {
+        for (Tree<S> tree : trees) {
+            if (!tree.isRootExpanded())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void growTree(Rollout<S> rollout) {
+        trees.get(rollout.getWorker() % trees.size()).growTree(rollout);
+    }
+
+    @Override
+    public void addRootStatistics(ActionStatistics statistics) {
+        for (Tree<S> tree : trees)
+            tree.addRootStatistics(statistics);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public S takeAction() {
+        statistics.clear();
+        addRootStatistics(statistics);
+        short action = statistics.bestAction();
+        setRoot(action, (S) rootState.takeAction(action));
+        return rootState;
+    }
+
+    @Override
+    public int getRootAction() {
+        return rootAction;
+    }
+
+    @Override
+    public void setVirtualLoss(int virtualLoss) {
+        for (Tree<S> tree : trees)
+            tree.setVirtualLoss(virtualLoss);
+    }
+
+    @Override
+    public void setLeafRollouts(int leafRollouts) {
+        for (Tree<S> tree : trees)
+            tree.setLeafRollouts(leafRollouts);
+    }
+
+    @Override
+    public void setMaxNodes(int maxNodes) {
+        for (Tree<S> tree : trees)
+            tree.setMaxNodes(maxNodes);
+    }
+
+    @Override
+    public void setSelectionPolicy(SelectionPolicy policy) {
+        for (Tree<S> tree : trees)
+            tree.setSelectionPolicy(policy);
+    }
+
+    @Override
+    public void setTreeReuse(boolean reuse) {
+        for (Tree<S> tree : trees)
+            tree.setTreeReuse(reuse);
+    }
+
+    @Override
+    public long getReplacedVisits() {
+        long visits = 0;
+        for (Tree<S> tree : trees)
+            visits += tree.getReplacedVisits();
+        return visits;
+    }
+
+    @Override
+    public long getRetainedVisits() {
+        long visits = 0;
+        for (Tree<S> tree : trees)
+            visits += tree.getRetainedVisits();
+        return visits;
+    }
+
+    @Override
+    public int getNodeCount() {
+        int count = 0;
+        for (Tree<S> tree : trees)
+            count += tree.getNodeCount();
+        return count;
+    }
+
+    @Override
+    public boolean isFull() {
+        for (Tree<S> tree : trees) {
+            if (!tree.isFull())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long getRecycledCount() {
+        long count = 0;
+        for (Tree<S> tree : trees)
+            count += tree.getRecycledCount();
+        return count;
+    }
+
+}
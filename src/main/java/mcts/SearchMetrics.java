@@ -0,0 +1,111 @@
+package mcts;
+
+import java.util.Arrays;
+
+// Snapshot of the counters of all workers of an Mcts since metrics were enabled. Workers keep
+// running while it is taken, so counters can be a few iterations apart from each other. Phase
+// times are estimated from the sampled iterations.
+public final class SearchMetrics implements SearchMetricsMXBean {
+    static final SearchMetrics EMPTY = new SearchMetrics(new WorkerMetrics[0]);
+
+    private final long[] counters = new long[WorkerMetrics.COUNTERS];
+    private final long[] depths = new long[WorkerMetrics.DEPTHS];
+
+    SearchMetrics(WorkerMetrics[] workers) {
+        for (WorkerMetrics worker : workers) {
+            if (worker == null)
+                continue;
+            for (int i = 0; i < counters.length; i++)
+                counters[i] += worker.get(i);
+            for (int i = 0; i < depths.length; i++)
+                depths[i] += worker.getDepthCount(i);
+        }
+    }
+
+    @Override
+    public long getIterations() {
+        return counters[WorkerMetrics.ITERATIONS];
+    }
+
+    // children linked into the tree
+    @Override
+    public long getExpansions() {
+        return counters[WorkerMetrics.EXPANSIONS];
+    }
+
+    // nodes taken from the pool or the heap, fewer than expansions with transpositions
+    @Override
+    public long getNodesAllocated() {
+        return counters[WorkerMetrics.ALLOCATIONS];
+    }
+
+    @Override
+    public long getRolloutPlies() {
+        return counters[WorkerMetrics.ROLLOUT_PLIES];
+    }
+
+    // pauses of selection waiting for another thread to publish a child
+    @Override
+    public long getSpinWaits() {
+        return counters[WorkerMetrics.SPIN_WAITS];
+    }
+
+    @Override
+    public long getSelectNanos() {
+        return estimate(WorkerMetrics.SELECT_NANOS);
+    }
+
+    // rollouts or leaf evaluations
+    @Override
+    public long getSimulateNanos() {
+        return estimate(WorkerMetrics.SIMULATE_NANOS);
+    }
+
+    @Override
+    public long getBackPropagateNanos() {
+        return estimate(WorkerMetrics.BACK_PROPAGATE_NANOS);
+    }
+
+    // leaves selected at each depth, the last entry counts all deeper leaves
+    @Override
+    public long[] getDepthHistogram() {
+        return depths.clone();
+    }
+
+    @Override
+    public double getMeanDepth() {
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < depths.length; i++) {
+            count += depths[i];
+            sum += i * depths[i];
+        }
+        return count == 0
+            ? 0
+            : (double) sum / count;
+    }
+
+    private long estimate(int counter) {
+        long sampled = counters[WorkerMetrics.SAMPLED_ITERATIONS];
+        return sampled == 0
+            ? 0
+            : (long) ((double) counters[counter] * getIterations() / sampled);
+    }
+
+    @Override
+    public String toString() {
+        int maxDepth = depths.length;
+        while (maxDepth > 0 && depths[maxDepth - 1] == 0)
+            maxDepth--;
+        return "iterations=" + getIterations()
+            + " expansions=" + getExpansions()
+            + " allocated=" + getNodesAllocated()
+            + " plies=" + getRolloutPlies()
+            + " spins=" + getSpinWaits()
+            + " select=" + getSelectNanos() / 1000000 + "ms"
+            + " simulate=" + getSimulateNanos() / 1000000 + "ms"
+            + " backPropagate=" + getBackPropagateNanos() / 1000000 + "ms"
+            + " depths=" + Arrays.toString(Arrays.copyOf(depths, maxDepth));
+    }
+
+}
@@ -0,0 +1,27 @@
+package mcts;
+
+// The metrics of an Mcts registered with Mcts.registerMetrics, each attribute read from a
+// fresh snapshot
+public interface SearchMetricsMXBean {
+
+    long getIterations();
+
+    long getExpansions();
+
+    long getNodesAllocated();
+
+    long getRolloutPlies();
+
+    long getSpinWaits();
+
+    long getSelectNanos();
+
+    long getSimulateNanos();
+
+    long getBackPropagateNanos();
+
+    long[] getDepthHistogram();
+
+    double getMeanDepth();
+
+}
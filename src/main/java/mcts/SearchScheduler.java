@@ -0,0 +1,325 @@
+package mcts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Runs the searches of many games on one pool of worker threads. Each search is split into one
+// task per Mcts thread and run SLICE iterations at a time, most urgent first: higher priority,
+// then earlier deadline, pondering after everything else. A worker keeps its task, so the
+// game's tree stays warm in its cache, until something more urgent is queued, or after QUANTUM
+// slices to take turns with a queued task as urgent. Between slices the worker only reads the
+// published head of the queue, the lock is taken to hand a task over.
+public class SearchScheduler implements AutoCloseable {
+    static final int SLICE = 64;
+    static final int QUANTUM = 8;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final PriorityQueue<Slice> queue = new PriorityQueue<>();
+    private final Thread[] workers;
+    // the most urgent queued slice, updated under the lock
+    private volatile Slice head;
+    private long sequence;
+    private volatile boolean closed;
+
+    public SearchScheduler(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be >= 1: " + threads);
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "mcts-scheduler-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // the Mcts needs no executor, its thread count caps how many workers search it at once
+    public Game newGame(Mcts<?> mcts, int priority) {
+        return new Game(mcts, priority);
+    }
+
+    // cancels queued searches and waits for the workers to stop
+    @Override
+    public void close() {
+        List<Slice> cancelled;
+        lock.lock();
+        try {
+            closed = true;
+            cancelled = new ArrayList<>(queue);
+            queue.clear();
+            head = null;
+            queued.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Slice slice : cancelled)
+            slice.cancel();
+        try {
+            for (Thread worker : workers)
+                worker.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void work() {
+        Slice slice = null;
+        int run = 0;
+        while (true) {
+            if (slice == null) {
+                slice = take();
+                if (slice == null)
+                    return;
+                run = 0;
+            }
+
+            if (!slice.iterate()) {
+                slice.task.finish();
+                slice = null;
+            } else if (isPreempted(slice)) {
+                requeue(slice);
+                slice = null;
+            } else if (++run >= QUANTUM) {
+                // alone or ahead of the queue the slice keeps its worker
+                Slice next = head;
+                if (next != null && next.compareUrgency(slice) <= 0) {
+                    requeue(slice);
+                    slice = null;
+                } else {
+                    run = 0;
+                }
+            }
+        }
+    }
+
+    private Slice take() {
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !closed)
+                queued.awaitUninterruptibly();
+            Slice slice = queue.poll();
+            head = queue.peek();
+            return slice;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a stale head is seen on the next slice
+    private boolean isPreempted(Slice slice) {
+        Slice next = head;
+        return closed || next != null && next.compareUrgency(slice) < 0;
+    }
+
+    private void requeue(Slice slice) {
+        boolean stopped;
+        lock.lock();
+        try {
+            if (closed) {
+                stopped = false;
+            } else {
+                stopped = slice.isStopped();
+                if (!stopped) {
+                    slice.sequence = sequence++;
+                    queue.add(slice);
+                    head = queue.peek();
+                    queued.signal();
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (stopped)
+            slice.task.finish();
+        else
+            slice.cancel();
+    }
+
+    public final class Game {
+        private final Mcts<?> mcts;
+        private final int priority;
+        private final AtomicLong searches = new AtomicLong();
+        private final AtomicLong iterations = new AtomicLong();
+        private final AtomicLong searchNanos = new AtomicLong();
+        // searches by the log2 of their latency in nanoseconds
+        private final AtomicLongArray latencies = new AtomicLongArray(64);
+        // the ponder search, stopPondering takes its slices off the queue, set under the lock
+        private CompletableFuture<Integer> pondering;
+
+        private Game(Mcts<?> mcts, int priority) {
+            this.mcts = mcts;
+            this.priority = priority;
+        }
+
+        // like Mcts.searchAsync, but run on the scheduler's workers
+        public CompletableFuture<Integer> search(long timeout, TimeUnit unit) {
+            return submit(unit.toNanos(timeout), true, false);
+        }
+
+        // like Mcts.think, blocks until the search is over
+        void think(long timeout, TimeUnit unit) {
+            submit(unit.toNanos(timeout), false, false).join();
+        }
+
+        // Mcts.startPondering, behind every search of every game and not counted as a search
+        void ponder() {
+            submit(Long.MAX_VALUE, false, true);
+        }
+
+        // Mcts.stopPondering, finishes the queued ponder slices instead of waiting for a worker
+        // to run each once more, which could take until every other search on the pool is done
+        void stopPondering() {
+            List<Slice> stopped = new ArrayList<>();
+            lock.lock();
+            try {
+                for (Slice slice : queue) {
+                    if (slice.ponder && slice.result == pondering)
+                        stopped.add(slice);
+                }
+                queue.removeAll(stopped);
+                head = queue.peek();
+                pondering = null;
+            } finally {
+                lock.unlock();
+            }
+            // slices running on a worker see that pondering stopped after their iteration, and
+            // are not requeued
+            for (Slice slice : stopped)
+                slice.task.finish();
+        }
+
+        private CompletableFuture<Integer> submit(long timeoutNanos, boolean takeAction, boolean ponder) {
+            long started = System.nanoTime();
+            long deadline = started + Math.min(timeoutNanos, Long.MAX_VALUE / 4);
+            int urgency = ponder
+                ? Integer.MIN_VALUE
+                : priority;
+            List<Slice> slices = new ArrayList<>(mcts.getThreads());
+            CompletableFuture<Integer> result = mcts.startSearch(timeoutNanos, takeAction, ponder,
+                task -> slices.add(new Slice(this, task, urgency, deadline, ponder)));
+            if (!ponder)
+                result.whenComplete((action, e) -> record(System.nanoTime() - started));
+
+            lock.lock();
+            try {
+                if (!closed) {
+                    if (ponder)
+                        pondering = result;
+                    for (Slice slice : slices) {
+                        slice.result = result;
+                        slice.sequence = sequence++;
+                        queue.add(slice);
+                    }
+                    head = queue.peek();
+                    queued.signalAll();
+                    return result;
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Slice slice : slices) {
+                slice.result = result;
+                slice.cancel();
+            }
+            return result;
+        }
+
+        public long getSearches() {
+            return searches.get();
+        }
+
+        public long getIterations() {
+            return iterations.get();
+        }
+
+        // iterations per second of search latency, including time spent queued
+        public double getIterationsPerSecond() {
+            long nanos = searchNanos.get();
+            return nanos == 0
+                ? 0
+                : iterations.get() * 1e9 / nanos;
+        }
+
+        // upper bound of the search latency at the given percentile, in nanoseconds
+        public long getLatencyNanos(double percentile) {
+            long count = 0;
+            for (int i = 0; i < latencies.length(); i++)
+                count += latencies.get(i);
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < latencies.length(); i++) {
+                seen += latencies.get(i);
+                if (seen >= rank && seen > 0)
+                    return i == 62
+                        ? Long.MAX_VALUE
+                        : (1L << (i + 1)) - 1;
+            }
+            return 0;
+        }
+
+        private void record(long nanos) {
+            searches.incrementAndGet();
+            searchNanos.addAndGet(nanos);
+            latencies.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+        }
+    }
+
+    private static final class Slice implements Comparable<Slice> {
+        private final Game game;
+        private final SearchTask task;
+        // the game's, or the lowest for pondering
+        private final int priority;
+        private final long deadline;
+        private final boolean ponder;
+        private CompletableFuture<Integer> result;
+        private long sequence;
+
+        Slice(Game game, SearchTask task, int priority, long deadline, boolean ponder) {
+            this.game = game;
+            this.task = task;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.ponder = ponder;
+        }
+
+        // a ponder slice whose game stopped pondering, checked under the lock
+        boolean isStopped() {
+            return ponder && game.pondering != result;
+        }
+
+        boolean iterate() {
+            int before = task.getIterations();
+            boolean more = task.iterate(SLICE);
+            game.iterations.addAndGet(task.getIterations() - before);
+            return more;
+        }
+
+        void cancel() {
+            result.cancel(false);
+            task.finish();
+        }
+
+        int compareUrgency(Slice other) {
+            if (priority != other.priority)
+                return Integer.compare(other.priority, priority);
+            return Long.signum(deadline - other.deadline);
+        }
+
+        @Override
+        public int compareTo(Slice other) {
+            int c = compareUrgency(other);
+            return c != 0
+                ? c
+                : Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package mcts;
+
+// one thread's share of a search, run in slices by whoever owns the thread
+interface SearchTask {
+
+    // runs up to count iterations, false once this share of the search is over
+    boolean iterate(int count);
+
+    // called once after iterate returned false, the last call takes the action
+    void finish();
+
+    // iterations run by this task so far
+    int getIterations();
+}
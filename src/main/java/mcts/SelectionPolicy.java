@@ -0,0 +1,86 @@
+package mcts;
+
+// How selection scores the children of a node. The policy is a final class whose kind picks one
+// of the selection loops in Node once per descent step, so the per child scoring is plain
+// arithmetic the JIT inlines instead of a call that turns megamorphic with several policies.
+public final class SelectionPolicy {
+    static final int UCB1 = 0;
+    static final int UCB1_TUNED = 1;
+    static final int PUCT = 2;
+
+    private static final int TABLE_SIZE = 1024;
+    private static final double[] LOG = new double[TABLE_SIZE];
+    private static final double[] SQRT_LOG = new double[TABLE_SIZE];
+    private static final double[] SQRT = new double[TABLE_SIZE];
+    private static final double[] INV_SQRT = new double[TABLE_SIZE];
+
+    // a parent without visits yet, while its child's reward is being backpropagated, scores like
+    // a parent with one visit
+    static {
+        for (int i = 1; i < TABLE_SIZE; i++) {
+            LOG[i] = Math.log(i);
+            SQRT_LOG[i] = Math.sqrt(LOG[i]);
+            SQRT[i] = Math.sqrt(i);
+            INV_SQRT[i] = 1 / Math.sqrt(i);
+        }
+        INV_SQRT[0] = Double.POSITIVE_INFINITY;
+    }
+
+    private final int kind;
+    private final double c;
+
+    private SelectionPolicy(int kind, double c) {
+        if (c < 0)
+            throw new IllegalArgumentException("c must be >= 0: " + c);
+        this.kind = kind;
+        this.c = c;
+    }
+
+    // mean reward + c * sqrt(ln(parent visits) / visits), the default with c = sqrt(2)
+    public static SelectionPolicy ucb1(double c) {
+        return new SelectionPolicy(UCB1, c);
+    }
+
+    // UCB1 with the exploration term capped by the variance of the child's rewards
+    public static SelectionPolicy ucb1Tuned(double c) {
+        return new SelectionPolicy(UCB1_TUNED, c);
+    }
+
+    // mean reward + c * prior * sqrt(parent visits) / (1 + visits), priors default to uniform
+    public static SelectionPolicy puct(double c) {
+        return new SelectionPolicy(PUCT, c);
+    }
+
+    int getKind() {
+        return kind;
+    }
+
+    double getC() {
+        return c;
+    }
+
+    static double log(int n) {
+        return n < TABLE_SIZE
+            ? LOG[n]
+            : Math.log(n);
+    }
+
+    static double sqrtLog(int n) {
+        return n < TABLE_SIZE
+            ? SQRT_LOG[n]
+            : Math.sqrt(Math.log(n));
+    }
+
+    static double sqrt(int n) {
+        return n < TABLE_SIZE
+            ? SQRT[n]
+            : Math.sqrt(n);
+    }
+
+    static double invSqrt(int n) {
+        return n < TABLE_SIZE
+            ? INV_SQRT[n]
+            : 1 / Math.sqrt(n);
+    }
+
+}
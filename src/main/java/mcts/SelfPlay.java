@@ -1,15 +1,17 @@
 package mcts;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutorService;
 
 public class SelfPlay<S extends State> {
-    private final Random random = new Random();
+    private Random random = new Random();
 
     private final Mcts<S> mcts1;
     private final Mcts<S> mcts2;
 
     private S state;
+    private boolean pondering;
 
     public SelfPlay(
         S state,
@@ -27,6 +29,26 @@ public class SelfPlay<S extends State> {
         mcts2 = new Mcts<>(executor2, threads2, timePerActionSec2, maxIterations2);
     }
 
+    // each player keeps searching while the other thinks, needs an executor per player
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+    }
+
+    // Seeds who starts and both players' searches. With one thread, no pondering and an
+    // iteration budget per player every game of the same seed is played the same way.
+    public void setSeed(long seed) {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        random = new Random(seeds.nextLong());
+        mcts1.setSeed(seeds.nextLong());
+        mcts2.setSeed(seeds.nextLong());
+    }
+
+    // logs the root statistics of both players' actions as players "1" and "2"
+    public void setReplayLog(ReplayLog replayLog) {
+        mcts1.setReplayLog(replayLog, "1");
+        mcts2.setReplayLog(replayLog, "2");
+    }
+
     @SuppressWarnings("unchecked")
     public int play() {
         int c = random.nextInt(2);
@@ -42,7 +64,11 @@ public class SelfPlay<S extends State> {
             mcts.think();
             state = (S) mcts.takeAction();
             action = mcts.getLastAction();
+            if (pondering && !state.isTerminal())
+                mcts.startPondering();
         }
+        mcts1.stopPondering();
+        mcts2.stopPondering();
         // System.out.println(state);
         boolean draw = state.getWinner() == 0;
         return !draw
@@ -50,6 +76,12 @@ public class SelfPlay<S extends State> {
             : 0;
     }
 
+    public Mcts<S> getMcts(int i) {
+        return i == 1
+            ? mcts1
+            : mcts2;
+    }
+
     public int getTotalIterations(int i) {
         return i == 1
             ? mcts1.getTotalIterations()
@@ -0,0 +1,49 @@
+package mcts;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+// A SplittableRandom stream behind the Random API that rollouts take. Random updates its seed
+// with a CAS on every draw, a worker's own stream needs no atomic at all. setSeed is left to
+// Random, it only runs from Random's constructor and does not affect the draws.
+class SplitRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private final SplittableRandom random;
+
+    SplitRandom(SplittableRandom random) {
+        super(0);
+        this.random = random;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return random.nextInt() >>> 32 - bits;
+    }
+
+    @Override
+    public int nextInt() {
+        return random.nextInt();
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    @Override
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return random.nextBoolean();
+    }
+
+}
@@ -6,6 +6,14 @@ public interface State {
 
     short[] getAvailableActions();
 
+    // fills actions and returns their count, actions is left untouched when it is too short
+    default int getAvailableActions(short[] actions) {
+        short[] available = getAvailableActions();
+        if (available.length <= actions.length)
+            System.arraycopy(available, 0, actions, 0, available.length);
+        return available.length;
+    }
+
     int getPreviousAgent();
 
     double getRewardFor(int agent);
@@ -14,8 +22,18 @@ public interface State {
 
     State copy();
 
+    // copy of this state that reuses scratch instead of allocating when possible
+    default State copyTo(State scratch) {
+        return copy();
+    }
+
     void applyAction(short action);
 
+    // position key for transposition tables, equal positions must have equal hashes
+    default long getHash() {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support hashing");
+    }
+
     int getWinner();
 
 }
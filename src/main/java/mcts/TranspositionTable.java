@@ -0,0 +1,65 @@
+package mcts;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Lock-free open addressing table from State.getHash() to nodes. A slot is claimed with a single
+// CAS of the node, which carries its own hash, so readers never see a half inserted entry.
+// Distinct states with equal 64 bit hashes are treated as the same position.
+class TranspositionTable<S extends State> {
+    private static final int MAX_PROBES = 16;
+
+    private final AtomicReferenceArray<Node<S>> nodes;
+    private final int mask;
+
+    TranspositionTable(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        nodes = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    Node<S> get(long hash) {
+        int start = index(hash);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            Node<S> node = nodes.get((start + probe) & mask);
+            if (node == null)
+                return null;
+            if (node.getHash() == hash)
+                return node;
+        }
+        return null;
+    }
+
+    // returns the node already stored for hash, node when it was inserted, or null when the
+    // probed slots are all taken by other positions
+    Node<S> putIfAbsent(Node<S> node) {
+        long hash = node.getHash();
+        int start = index(hash);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int i = (start + probe) & mask;
+            Node<S> current = nodes.get(i);
+            if (current == null) {
+                if (nodes.compareAndSet(i, null, node))
+                    return node;
+                current = nodes.get(i);
+            }
+            if (current.getHash() == hash)
+                return current;
+        }
+        return null;
+    }
+
+    void clear() {
+        for (int i = 0; i < nodes.length(); i++)
+            nodes.lazySet(i, null);
+    }
+
+    private int index(long hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+
+}
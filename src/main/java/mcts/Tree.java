@@ -0,0 +1,44 @@
+package mcts;
+
+interface Tree<S extends State> {
+
+    void setRoot(int action, S state);
+
+    boolean isRootExpanded();
+
+    void growTree(Rollout<S> rollout);
+
+    // sums the visits and rewards of the root's visited children
+    void addRootStatistics(ActionStatistics statistics);
+
+    S takeAction();
+
+    int getRootAction();
+
+    void setVirtualLoss(int virtualLoss);
+
+    // rollouts played from each selected leaf, backpropagated once as their sum
+    void setLeafRollouts(int leafRollouts);
+
+    // the tree stops expanding at maxNodes
+    void setMaxNodes(int maxNodes);
+
+    void setSelectionPolicy(SelectionPolicy policy);
+
+    // false discards the tree on every setRoot instead of keeping the subtree of the action
+    void setTreeReuse(boolean reuse);
+
+    // visits of the root before the last setRoot or takeAction, 0 for the first root
+    long getReplacedVisits();
+
+    // visits kept from the replaced root in the subtree that became the root
+    long getRetainedVisits();
+
+    int getNodeCount();
+
+    // true once the tree stopped expanding for lack of room, until room is made
+    boolean isFull();
+
+    long getRecycledCount();
+
+}
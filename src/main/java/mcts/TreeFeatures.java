@@ -0,0 +1,28 @@
+package mcts;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// What node trees offer beyond Tree. Array trees keep fixed records of the statistics UCB1
+// needs and do not implement it, Mcts checks for it before configuring any of these.
+interface TreeFeatures<S extends State> {
+
+    // shares the nodes of equal positions found through State.getHash()
+    void setTranspositions(int capacity);
+
+    // null simulates leaves with rollouts instead of evaluating them
+    void setEvaluationQueue(EvaluationQueue<S> evaluations);
+
+    // null expands every action of a node before selecting among its children
+    void setProgressiveWidening(ProgressiveWidening widening);
+
+    // writes the root and levels of visited nodes below it for setOpeningBook
+    void writeSnapshot(Path file, int levels) throws IOException;
+
+    // nodes found in book start with its statistics, null searches from scratch
+    void setOpeningBook(OpeningBook book);
+
+    // seeds the randomness of the tree outside of rollouts, such as shuffling the root's actions
+    void setSeed(long seed);
+
+}
@@ -0,0 +1,46 @@
+package mcts;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Executors for hosting games: a game mostly waits for its searches, so on Java 21+ it runs on a
+// virtual thread while the searches run on a SearchScheduler's bounded pool of platform threads.
+public final class VirtualThreads {
+    // Executors.newVirtualThreadPerTaskExecutor is only available from Java 21
+    private static final MethodHandle NEW_EXECUTOR = findNewExecutor();
+
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    // a virtual thread per task, or a cached pool of daemon platform threads before Java 21
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "mcts-game");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findNewExecutor() {
+        try {
+            return MethodHandles.lookup()
+                .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
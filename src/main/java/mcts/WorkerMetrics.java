@@ -0,0 +1,90 @@
+package mcts;
+
+// Counters of one search worker. Only the worker's current thread writes them, with plain
+// stores, and snapshots read them racily, so recording costs no atomic instructions. The
+// counters live in one array padded at both ends, keeping the workers' counters on separate
+// cache lines. Phase times are taken on one iteration in SAMPLE_PERIOD only and scaled up in
+// the snapshot, so most iterations do not read the clock.
+final class WorkerMetrics {
+    static final int DEPTHS = 32;
+    static final int SAMPLE_PERIOD = 16;
+
+    static final int ITERATIONS = 0;
+    static final int EXPANSIONS = 1;
+    static final int ALLOCATIONS = 2;
+    static final int ROLLOUT_PLIES = 3;
+    static final int SPIN_WAITS = 4;
+    static final int SAMPLED_ITERATIONS = 5;
+    static final int SELECT_NANOS = 6;
+    static final int SIMULATE_NANOS = 7;
+    static final int BACK_PROPAGATE_NANOS = 8;
+    static final int COUNTERS = 9;
+
+    // 128 bytes, two cache lines on most CPUs against adjacent line prefetching
+    private static final int PAD = 16;
+    private static final int DEPTH = PAD + COUNTERS;
+
+    private final long[] counters = new long[PAD + COUNTERS + DEPTHS + PAD];
+    private int untilSample = SAMPLE_PERIOD;
+    private boolean sampling;
+    private long lap;
+
+    void startIteration() {
+        counters[PAD + ITERATIONS]++;
+        sampling = --untilSample == 0;
+        if (sampling) {
+            untilSample = SAMPLE_PERIOD;
+            counters[PAD + SAMPLED_ITERATIONS]++;
+            lap = System.nanoTime();
+        }
+    }
+
+    // depth of the selected leaf, the root is at depth 0
+    void selected(int depth) {
+        counters[DEPTH + Math.min(depth, DEPTHS - 1)]++;
+        if (sampling)
+            counters[PAD + SELECT_NANOS] += lap();
+    }
+
+    void simulated() {
+        if (sampling)
+            counters[PAD + SIMULATE_NANOS] += lap();
+    }
+
+    void backPropagated() {
+        if (sampling)
+            counters[PAD + BACK_PROPAGATE_NANOS] += lap();
+    }
+
+    void expanded() {
+        counters[PAD + EXPANSIONS]++;
+    }
+
+    void allocated() {
+        counters[PAD + ALLOCATIONS]++;
+    }
+
+    void addRolloutPlies(int plies) {
+        counters[PAD + ROLLOUT_PLIES] += plies;
+    }
+
+    void spinWaited() {
+        counters[PAD + SPIN_WAITS]++;
+    }
+
+    private long lap() {
+        long now = System.nanoTime();
+        long nanos = now - lap;
+        lap = now;
+        return nanos;
+    }
+
+    long get(int counter) {
+        return counters[PAD + counter];
+    }
+
+    long getDepthCount(int depth) {
+        return counters[DEPTH + depth];
+    }
+
+}
@@ -12,13 +12,16 @@ public class BenchmarkMcts {
     private final int needed;
     private final int times;
     private final int maxIterations2;
+    // games are seeded with seed + game when not null, repeatable with one thread per player
+    private final Long seed;
 
     private long took;
 
-    public BenchmarkMcts(int dim, int needed, int times, int iterations) {
+    public BenchmarkMcts(int dim, int needed, int times, int iterations, Long seed) {
         this.dim = dim;
         this.needed = needed;
         this.times = times;
+        this.seed = seed;
         maxIterations2 = iterations;
     }
 
@@ -93,6 +96,8 @@ public class BenchmarkMcts {
                 timePerActionSec,
                 maxIterations1,
                 maxIterations2);
+            if (seed != null)
+                play.setSeed(seed + i);
 
             int winner = play.play();
 
@@ -108,14 +113,18 @@ public class BenchmarkMcts {
     }
 
     public static void main(String[] args) {
-        if (args.length != 4) {
-            new BenchmarkMcts(5, 3, 100, 100).run();
+        if (args.length < 4) {
+            new BenchmarkMcts(5, 3, 100, 100, null).run();
+            return;
         }
         int dims = Integer.parseInt(args[0]);
         int needed = Integer.parseInt(args[1]);
         int times = Integer.parseInt(args[2]);
         int iterations = Integer.parseInt(args[3]);
-        new BenchmarkMcts(dims, needed, times, iterations).run();
+        Long seed = args.length > 4
+            ? Long.valueOf(args[4])
+            : null;
+        new BenchmarkMcts(dims, needed, times, iterations, seed).run();
     }
 
 }
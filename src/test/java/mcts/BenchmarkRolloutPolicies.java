@@ -0,0 +1,72 @@
+package mcts;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+// Plays each rollout policy against uniform rollouts with the same time per action on one
+// thread each, so the score is strength per CPU second: a heavier policy has to make up for
+// its fewer iterations with better ones.
+public class BenchmarkRolloutPolicies {
+    private final int dim;
+    private final int needed;
+    private final int times;
+    private final int millisPerAction;
+
+    public BenchmarkRolloutPolicies(int dim, int needed, int times, int millisPerAction) {
+        this.dim = dim;
+        this.needed = needed;
+        this.times = times;
+        this.millisPerAction = millisPerAction;
+    }
+
+    private void run() {
+        run("heuristic", () -> new TicTacToeRolloutPolicy());
+        run("heuristic cut off at 8", () -> new TicTacToeRolloutPolicy(8));
+        run("mast .1", () -> new MastRolloutPolicy<>(.1));
+        run("mast .3", () -> new MastRolloutPolicy<>(.3));
+    }
+
+    private void run(String name, Supplier<RolloutPolicy<TicTacToe>> policy) {
+        long start = System.currentTimeMillis();
+        int[] scores = new int[3];
+        long iterations1 = 0;
+        long iterations2 = 0;
+        for (int i = 0; i < times; i++) {
+            SelfPlay<TicTacToe> play = new SelfPlay<>(
+                TicTacToe.start(dim, needed),
+                null,
+                null,
+                1,
+                1,
+                millisPerAction,
+                millisPerAction,
+                Integer.MAX_VALUE,
+                Integer.MAX_VALUE);
+            play.getMcts(1).setRolloutPolicy(policy);
+            scores[play.play()]++;
+            iterations1 += play.getTotalIterations(1);
+            iterations2 += play.getTotalIterations(2);
+        }
+        long took = System.currentTimeMillis() - start;
+        System.out.printf(
+            "%s vs uniform: %d%% %s, %d vs %d iterations/s\n",
+            name,
+            (int) (100. * (scores[1] + scores[0] / 2.) / times),
+            Arrays.toString(scores),
+            iterations1 * 1000 / Math.max(took / 2, 1),
+            iterations2 * 1000 / Math.max(took / 2, 1));
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            new BenchmarkRolloutPolicies(7, 4, 50, 50).run();
+            return;
+        }
+        int dims = Integer.parseInt(args[0]);
+        int needed = Integer.parseInt(args[1]);
+        int times = Integer.parseInt(args[2]);
+        int millis = Integer.parseInt(args[3]);
+        new BenchmarkRolloutPolicies(dims, needed, times, millis).run();
+    }
+
+}
@@ -0,0 +1,297 @@
+package mcts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// TicTacToe with the same rules, actions and hashes, on one bitboard of ceil(dim * dim / 64)
+// longs per player. Every window of needed cells through a cell along the lines TicTacToe
+// checks is a precomputed mask, so a move is checked for a win by testing only the windows
+// through its cell, and a copy clones one small long array.
+public class BitboardTicTacToe implements State {
+
+    public static BitboardTicTacToe start(int dim) {
+        return new BitboardTicTacToe(dim, dim);
+    }
+
+    public static BitboardTicTacToe start(int dim, int needed) {
+        return new BitboardTicTacToe(dim, needed);
+    }
+
+    private static final byte DRAW = 0;
+    private static final byte NOT_OVER_YET = (byte) 99;
+
+    private static final ConcurrentHashMap<Integer, Lines> LINES = new ConcurrentHashMap<>();
+
+    private final Lines lines;
+    // words of agent 1, then words of agent 2
+    private final long[] bits;
+
+    private byte agent;
+    private byte winner;
+    private int round;
+    private long hash;
+
+    public BitboardTicTacToe(int dim, int needed) {
+        assert dim >= needed;
+        this.lines = LINES.computeIfAbsent(dim << 16 | needed, key -> new Lines(dim, needed));
+        this.bits = new long[2 * lines.words];
+        this.agent = 1;
+        this.winner = NOT_OVER_YET;
+    }
+
+    private BitboardTicTacToe(BitboardTicTacToe o) {
+        lines = o.lines;
+        bits = o.bits.clone();
+        agent = o.agent;
+        winner = o.winner;
+        round = o.round;
+        hash = o.hash;
+    }
+
+    @Override
+    public State copy() {
+        return new BitboardTicTacToe(this);
+    }
+
+    @Override
+    public State copyTo(State scratch) {
+        if (!(scratch instanceof BitboardTicTacToe))
+            return copy();
+        BitboardTicTacToe o = (BitboardTicTacToe) scratch;
+        if (o.lines != lines)
+            return copy();
+        System.arraycopy(bits, 0, o.bits, 0, bits.length);
+        o.agent = agent;
+        o.winner = winner;
+        o.round = round;
+        o.hash = hash;
+        return o;
+    }
+
+    @Override
+    public boolean isTerminal() {
+        return winner < NOT_OVER_YET;
+    }
+
+    @Override
+    public short[] getAvailableActions() {
+        short[] actions = new short[lines.cells - round];
+        fillActions(actions);
+        return actions;
+    }
+
+    @Override
+    public int getAvailableActions(short[] actions) {
+        int remaining = lines.cells - round;
+        if (remaining <= actions.length)
+            fillActions(actions);
+        return remaining;
+    }
+
+    private void fillActions(short[] actions) {
+        int words = lines.words;
+        int idx = 0;
+        for (int w = 0; w < words; w++) {
+            long free = ~(bits[w] | bits[words + w]) & lines.cellMasks[w];
+            while (free != 0) {
+                actions[idx++] = (short) (w << 6 | Long.numberOfTrailingZeros(free));
+                free &= free - 1;
+            }
+        }
+        assert idx == lines.cells - round;
+    }
+
+    @Override
+    public int getPreviousAgent() {
+        return 3 - agent;
+    }
+
+    @Override
+    public double getRewardFor(int agent) {
+        assert winner < NOT_OVER_YET;
+        if (winner == DRAW)
+            return .5;
+
+        return winner == agent
+            ? 1.
+            : 0;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public State takeAction(short action) {
+        BitboardTicTacToe next = new BitboardTicTacToe(this);
+        next.applyAction(action);
+        return next;
+    }
+
+    @Override
+    public void applyAction(short action) {
+        byte prevAgent = agent;
+        agent = (byte) (3 - agent);
+        round++;
+        bits[(prevAgent - 1) * lines.words + (action >>> 6)] |= 1L << action;
+        hash ^= TicTacToe.zobrist(action, prevAgent);
+        if (isLine(action, prevAgent))
+            winner = prevAgent;
+        else if (round == lines.cells)
+            winner = DRAW;
+    }
+
+    @Override
+    public int getWinner() {
+        return winner;
+    }
+
+    // whether the agent to move wins by marking the free cell action
+    public boolean isWinningMove(short action) {
+        return isWinningMove(action, agent);
+    }
+
+    // whether the opponent of the agent to move would win by marking the free cell action
+    public boolean isBlockingMove(short action) {
+        return isWinningMove(action, (byte) (3 - agent));
+    }
+
+    private boolean isWinningMove(short action, byte player) {
+        int word = (player - 1) * lines.words + (action >>> 6);
+        long before = bits[word];
+        bits[word] = before | 1L << action;
+        boolean wins = isLine(action, player);
+        bits[word] = before;
+        return wins;
+    }
+
+    // whether a window through cell is full of player's marks
+    private boolean isLine(int cell, byte player) {
+        if (lines.words == 1) {
+            long board = bits[player - 1];
+            for (long mask : lines.masks[cell]) {
+                if ((board & mask) == mask)
+                    return true;
+            }
+            return false;
+        }
+
+        int base = (player - 1) * lines.words;
+        int[] words = lines.maskWords[cell];
+        long[] masks = lines.masks[cell];
+        int start = 0;
+        for (int end : lines.windowEnds[cell]) {
+            int e = start;
+            while (e < end && (bits[base + words[e]] & masks[e]) == masks[e])
+                e++;
+            if (e == end)
+                return true;
+            start = end;
+        }
+        return false;
+    }
+
+    private byte at(int row, int col) {
+        int cell = row * lines.dim + col;
+        long bit = 1L << cell;
+        if ((bits[cell >>> 6] & bit) != 0)
+            return 1;
+        if ((bits[lines.words + (cell >>> 6)] & bit) != 0)
+            return 2;
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("State=\n");
+        for (int r = 0; r < lines.dim; r++) {
+            for (int c = 0; c < lines.dim; c++)
+                b.append(".XO".charAt(at(r, c)));
+            b.append("\n");
+        }
+        return b.toString();
+    }
+
+    // The windows of needed cells through each cell: along its row and column, and along the
+    // two main diagonals for cells on them, the lines TicTacToe checks. With one word a window
+    // is a single mask, with more it is split into (word, mask) entries, windowEnds[cell] ends
+    // each window's entries.
+    private static final class Lines {
+        final int dim;
+        final int cells;
+        final int words;
+        // the valid cells of each word
+        final long[] cellMasks;
+        final long[][] masks;
+        final int[][] maskWords;
+        final int[][] windowEnds;
+
+        Lines(int dim, int needed) {
+            this.dim = dim;
+            this.cells = dim * dim;
+            this.words = (cells + 63) >>> 6;
+            cellMasks = new long[words];
+            for (int cell = 0; cell < cells; cell++)
+                cellMasks[cell >>> 6] |= 1L << cell;
+
+            masks = new long[cells][];
+            maskWords = new int[cells][];
+            windowEnds = new int[cells][];
+            for (int cell = 0; cell < cells; cell++) {
+                int row = cell / dim;
+                int col = cell % dim;
+                List<long[]> windows = new ArrayList<>();
+                addWindows(windows, row, col, 0, 1, col, needed);
+                addWindows(windows, row, col, 1, 0, row, needed);
+                if (row == col)
+                    addWindows(windows, row, col, 1, 1, row, needed);
+                if (row == dim - 1 - col)
+                    addWindows(windows, row, col, 1, -1, row, needed);
+                split(cell, windows);
+            }
+        }
+
+        // windows of needed cells through (row, col) along (dr, dc), position is the index of
+        // the cell along the line
+        private void addWindows(List<long[]> windows, int row, int col, int dr, int dc,
+                                int position, int needed) {
+            int first = Math.max(0, position - needed + 1);
+            int last = Math.min(position, dim - needed);
+            for (int start = first; start <= last; start++) {
+                long[] window = new long[words];
+                for (int i = 0; i < needed; i++) {
+                    int step = start + i - position;
+                    int cell = (row + step * dr) * dim + col + step * dc;
+                    window[cell >>> 6] |= 1L << cell;
+                }
+                windows.add(window);
+            }
+        }
+
+        private void split(int cell, List<long[]> windows) {
+            List<Long> cellMasks = new ArrayList<>();
+            List<Integer> cellWords = new ArrayList<>();
+            int[] ends = new int[windows.size()];
+            for (int i = 0; i < windows.size(); i++) {
+                long[] window = windows.get(i);
+                for (int w = 0; w < words; w++) {
+                    if (window[w] != 0) {
+                        cellMasks.add(window[w]);
+                        cellWords.add(w);
+                    }
+                }
+                ends[i] = cellMasks.size();
+            }
+            masks[cell] = new long[cellMasks.size()];
+            maskWords[cell] = new int[cellWords.size()];
+            for (int i = 0; i < masks[cell].length; i++) {
+                masks[cell][i] = cellMasks.get(i);
+                maskWords[cell][i] = cellWords.get(i);
+            }
+            windowEnds[cell] = ends;
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+package mcts;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// mvn -Pjmh test -Djmh.args="-prof gc MctsBenchmark.think"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MctsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Board {
+        @Param({"3x3", "6x4", "10x8"})
+        public String board;
+
+        TicTacToe start;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String[] dims = board.split("x");
+            start = TicTacToe.start(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Implementation {
+        // TicTacToe's byte board or BitboardTicTacToe
+        @Param({"bytes", "bitboards"})
+        public String implementation;
+
+        mcts.State start;
+
+        @Setup(Level.Trial)
+        public void setUp(Board board) {
+            String[] dims = board.board.split("x");
+            start = implementation.equals("bytes")
+                ? board.start
+                : BitboardTicTacToe.start(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Search {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        @Param({"1000"})
+        public int iterations;
+
+        @Param({"0"})
+        public int virtualLoss;
+
+        @Param({"1"})
+        public int leafRollouts;
+
+        // 1 is tree parallelism, threads is root parallelism
+        @Param({"1"})
+        public int rootTrees;
+
+        // nodes, actions, arrays or offheap
+        @Param({"nodes"})
+        public String tree;
+
+        @Param({"4000000"})
+        public int capacity;
+
+        // transposition table capacity, 0 searches a tree
+        @Param({"0"})
+        public int transpositions;
+
+        @Param({"false"})
+        public boolean metrics;
+
+        ExecutorService executor;
+        Mcts<TicTacToe> mcts;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            executor = threads > 1
+                ? Executors.newFixedThreadPool(threads)
+                : null;
+            mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, iterations);
+            mcts.setVirtualLoss(virtualLoss);
+            mcts.setLeafRollouts(leafRollouts);
+            if (tree.equals("actions"))
+                mcts.setActionNodeTree();
+            else if (tree.equals("arrays"))
+                mcts.setArrayTree(capacity);
+            else if (tree.equals("offheap"))
+                mcts.setOffHeapTree((long) capacity * OffHeapNodeStore.NODE_BYTES);
+            if (transpositions > 0)
+                mcts.setTranspositions(transpositions);
+            if (rootTrees <= threads)
+                mcts.setRootParallel(rootTrees);
+            mcts.setMetrics(metrics);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Iterations {
+        public long iterations;
+        public long rollouts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+            rollouts = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SearchedTree {
+        @Param({"10000"})
+        public int treeIterations;
+
+        Mcts<TicTacToe> mcts;
+        Node<TicTacToe> root;
+
+        @Setup(Level.Trial)
+        public void setUp(Board board) {
+            mcts = new Mcts<>(null, 1, Long.MAX_VALUE, treeIterations);
+            mcts.setRoot(-1, board.start);
+            mcts.think();
+            root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Playout {
+        Rollout<TicTacToe> rollout = new Rollout<>(ThreadLocalRandom.current());
+        Rollout<mcts.State> anyRollout = new Rollout<>(ThreadLocalRandom.current());
+        NodePool<TicTacToe> pool = new NodePool<>();
+    }
+
+    @Benchmark
+    public int think(Board board, Search search, Iterations counter) {
+        Mcts<TicTacToe> mcts = search.mcts;
+        int before = mcts.getTotalIterations();
+        mcts.setRoot(-1, board.start);
+        mcts.think();
+        int iterations = mcts.getTotalIterations() - before;
+        counter.iterations += iterations;
+        counter.rollouts += (long) iterations * search.leafRollouts;
+        return iterations;
+    }
+
+    @Benchmark
+    public Node<TicTacToe> getBestChild(SearchedTree tree) {
+        return tree.root.childToExplore();
+    }
+
+    @Benchmark
+    public Node<TicTacToe> expand(Board board, Playout playout) {
+        return new Node<>(null, -1, board.start).expand(playout.pool);
+    }
+
+    @Benchmark
+    public TicTacToe simulate(SearchedTree tree, Playout playout) {
+        return playout.rollout.simulate(tree.root.getState());
+    }
+
+    // a whole game from the empty board
+    @Benchmark
+    public mcts.State rollout(Implementation implementation, Playout playout) {
+        return playout.anyRollout.simulate(implementation.start);
+    }
+
+}
@@ -0,0 +1,29 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestActionNodes {
+
+    @Test
+    public void testActionNodesDraw3x3() {
+        TestTicTacToe.assertDraws3x3(play -> play.getMcts(1).setActionNodeTree());
+    }
+
+    @Test
+    public void testActionNodesDoNotKeepStates() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 1000);
+        mcts.setActionNodeTree();
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(1000, root.getVisits());
+        assertNull(root.childToExploit().getState());
+
+        TicTacToe state = (TicTacToe) mcts.takeAction();
+        assertSame(state, ((NodeTree<TicTacToe>) mcts.getTree()).getRoot().getState());
+    }
+
+}
@@ -0,0 +1,182 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestArrayTree {
+    private final int threads = 4;
+
+    @Test
+    public void testRootVisitsMatchIterations() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 2000);
+        mcts.setArrayTree(1 << 20);
+        mcts.setVirtualLoss(1);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        executor.shutdown();
+
+        ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+        assertEquals(mcts.getTotalIterations(), tree.getVisits(tree.getRoot()));
+    }
+
+    @Test
+    public void testFullTreeStopsExpanding() {
+        int capacity = 500;
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 5000);
+        mcts.setArrayTree(capacity);
+        mcts.setRoot(-1, TicTacToe.start(6, 4));
+        mcts.think();
+
+        ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+        assertTrue(tree.size() <= capacity);
+        assertEquals(5000, tree.getVisits(tree.getRoot()));
+
+        TicTacToe state = (TicTacToe) mcts.takeAction();
+        assertFalse(state.isTerminal());
+    }
+
+    // a leaf root used to spin forever in takeAction
+    @Test(timeout = 60000)
+    public void testGameOnAFullTreeFinishes() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+        mcts.setArrayTree(400);
+        TicTacToe state = TicTacToe.start(5, 4);
+        mcts.setRoot(-1, state);
+        while (!state.isTerminal()) {
+            mcts.think();
+            state = (TicTacToe) mcts.takeAction();
+
+            // the new root always has its children, however full the tree was
+            ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+            assertTrue(state.isTerminal() || !tree.isRootLeaf());
+        }
+    }
+
+    @Test
+    public void testPromotionCompactsTheKeptSubtree() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 5000);
+        mcts.setArrayTree(1 << 14);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+        int before = tree.size();
+        mcts.takeAction();
+
+        assertTrue(mcts.getRecycledCount() > 0);
+        assertEquals(before - mcts.getRecycledCount(), tree.size());
+        assertEquals(0, tree.getRoot());
+        long retained = tree.getRetainedVisits();
+        assertEquals(retained, tree.getVisits(0));
+
+        // the moved subtree keeps growing from its statistics
+        mcts.think();
+        assertEquals(retained + 5000, tree.getVisits(0));
+    }
+
+    @Test
+    public void testArrayTreeDraws3x3() {
+        TestTicTacToe.assertDraws3x3(play -> play.getMcts(1).setArrayTree(1 << 16));
+    }
+
+    @Test
+    public void testOffHeapRootVisitsMatchIterations() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 2000);
+        mcts.setOffHeapTree(64L << 20);
+        mcts.setVirtualLoss(1);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        executor.shutdown();
+
+        ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+        assertEquals(mcts.getTotalIterations(), tree.getVisits(tree.getRoot()));
+    }
+
+    @Test
+    public void testOffHeapBudgetStopsExpanding() {
+        int capacity = 500;
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 5000);
+        mcts.setOffHeapTree(capacity * OffHeapNodeStore.NODE_BYTES);
+        mcts.setRoot(-1, TicTacToe.start(6, 4));
+        mcts.think();
+
+        ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+        assertTrue(tree.size() <= capacity);
+        assertEquals(5000, tree.getVisits(tree.getRoot()));
+    }
+
+    @Test
+    public void testOffHeapSegmentsHoldOneTree() {
+        // 64 nodes per segment
+        ArrayTree<TicTacToe> tree =
+            new ArrayTree<>(new OffHeapNodeStore(20000L * OffHeapNodeStore.NODE_BYTES, 6));
+        tree.setRoot(-1, TicTacToe.start(5, 4));
+        Rollout<TicTacToe> rollout = new Rollout<>(new Random(1));
+        for (int i = 0; i < 5000; i++)
+            tree.growTree(rollout);
+
+        assertTrue(tree.size() > 64 * 100);
+        assertEquals(5000, tree.getVisits(tree.getRoot()));
+    }
+
+    @Test
+    public void testOffHeapCompactionMovesAcrossSegments() {
+        ArrayTree<TicTacToe> tree =
+            new ArrayTree<>(new OffHeapNodeStore(12000L * OffHeapNodeStore.NODE_BYTES, 6));
+        tree.setRoot(-1, TicTacToe.start(5, 4));
+        Rollout<TicTacToe> rollout = new Rollout<>(new Random(1));
+        for (int i = 0; i < 5000; i++)
+            tree.growTree(rollout);
+        tree.takeAction();
+
+        assertTrue(tree.getRecycledCount() > 0);
+        long retained = tree.getRetainedVisits();
+        assertEquals(retained, tree.getVisits(tree.getRoot()));
+        for (int i = 0; i < 1000; i++)
+            tree.growTree(rollout);
+        assertEquals(retained + 1000, tree.getVisits(tree.getRoot()));
+    }
+
+    @Test
+    public void testNodeTreeSettingsAreRejectedUpFront() {
+        Mcts<TicTacToe> nodes = new Mcts<>(null, 1, Long.MAX_VALUE, 100);
+        nodes.setTranspositions(1 << 10);
+        try {
+            nodes.setArrayTree(1 << 10);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("array trees do not support transpositions", e.getMessage());
+        }
+
+        Mcts<TicTacToe> array = new Mcts<>(null, 1, Long.MAX_VALUE, 100);
+        array.setArrayTree(1 << 10);
+        try {
+            array.setSelectionPolicy(SelectionPolicy.ucb1Tuned(1));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("array trees only support UCB1", e.getMessage());
+        }
+        array.setSelectionPolicy(SelectionPolicy.ucb1(1));
+        array.setOpeningBook(null);
+        array.setSeed(1);
+    }
+
+    @Test
+    public void testLeafRolloutsCountAsVisits() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 500);
+        mcts.setArrayTree(1 << 16);
+        mcts.setLeafRollouts(4);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+
+        ArrayTree<TicTacToe> tree = (ArrayTree<TicTacToe>) mcts.getTree();
+        assertEquals(2000, tree.getVisits(tree.getRoot()));
+    }
+
+}
@@ -0,0 +1,84 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestBitboardTicTacToe {
+    private final Random random = new Random(7);
+
+    @Test
+    public void testMatchesTicTacToeMoveForMove() {
+        int[][] boards = { { 3, 3 }, { 4, 3 }, { 5, 4 }, { 8, 5 }, { 9, 4 }, { 12, 6 }, { 19, 5 } };
+        for (int[] board : boards) {
+            for (int game = 0; game < 200; game++)
+                playBoth(board[0], board[1]);
+        }
+    }
+
+    private void playBoth(int dim, int needed) {
+        TicTacToe bytes = TicTacToe.start(dim, needed);
+        BitboardTicTacToe bitboard = BitboardTicTacToe.start(dim, needed);
+        BitboardTicTacToe scratch = null;
+        while (true) {
+            assertSamePosition(bytes, bitboard);
+            if (bytes.isTerminal())
+                return;
+
+            short[] actions = bytes.getAvailableActions();
+            for (short action : actions) {
+                assertEquals(bytes.isWinningMove(action), bitboard.isWinningMove(action));
+                assertEquals(bytes.isBlockingMove(action), bitboard.isBlockingMove(action));
+            }
+            short action = actions[random.nextInt(actions.length)];
+            bytes.applyAction(action);
+            if (random.nextBoolean()) {
+                bitboard = (BitboardTicTacToe) bitboard.takeAction(action);
+            } else {
+                scratch = (BitboardTicTacToe) bitboard.copyTo(scratch);
+                scratch.applyAction(action);
+                BitboardTicTacToe played = scratch;
+                scratch = bitboard;
+                bitboard = played;
+            }
+        }
+    }
+
+    private static void assertSamePosition(TicTacToe bytes, BitboardTicTacToe bitboard) {
+        assertEquals(bytes.isTerminal(), bitboard.isTerminal());
+        assertEquals(bytes.getWinner(), bitboard.getWinner());
+        assertEquals(bytes.getPreviousAgent(), bitboard.getPreviousAgent());
+        assertEquals(bytes.getHash(), bitboard.getHash());
+        assertEquals(bytes.toString(), bitboard.toString());
+        assertArrayEquals(bytes.getAvailableActions(), bitboard.getAvailableActions());
+        short[] buffer = new short[bytes.getAvailableActions().length];
+        assertEquals(buffer.length, bitboard.getAvailableActions(buffer));
+        assertArrayEquals(bytes.getAvailableActions(), buffer);
+        if (bytes.isTerminal()) {
+            assertEquals(bytes.getRewardFor(1), bitboard.getRewardFor(1), 0);
+            assertEquals(bytes.getRewardFor(2), bitboard.getRewardFor(2), 0);
+        }
+    }
+
+    @Test
+    public void testSeededSearchesPlayTheSameGames() {
+        ReplayLog bytes = new ReplayLog();
+        ReplayLog bitboard = new ReplayLog();
+        for (int i = 0; i < 5; i++) {
+            playSeeded(TicTacToe.start(6, 4), i, bytes);
+            playSeeded(BitboardTicTacToe.start(6, 4), i, bitboard);
+        }
+        assertFalse(bytes.getLines().isEmpty());
+        assertEquals(-1, bytes.firstDifference(bitboard));
+    }
+
+    private static <S extends State> void playSeeded(S start, long seed, ReplayLog log) {
+        SelfPlay<S> play = new SelfPlay<>(start, null, null, 1, 1, 100000, 100000, 300, 300);
+        play.setSeed(seed);
+        play.setReplayLog(log);
+        play.play();
+    }
+
+}
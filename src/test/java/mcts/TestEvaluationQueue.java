@@ -0,0 +1,177 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestEvaluationQueue {
+    private final int threads = 4;
+
+    @Test
+    public void testLeavesAreEvaluatedInBatches() {
+        AtomicInteger largestBatch = new AtomicInteger();
+        RolloutEvaluator<TicTacToe> rollouts = new RolloutEvaluator<>(new Random(1), 1);
+        Evaluator<TicTacToe> evaluator = batch -> {
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+            rollouts.evaluate(batch);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (EvaluationQueue<TicTacToe> evaluations = new EvaluationQueue<>(evaluator, threads, 1, TimeUnit.MILLISECONDS)) {
+            Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 300);
+            mcts.setEvaluationQueue(evaluations);
+            mcts.setRoot(-1, TicTacToe.start(4, 3));
+            mcts.think();
+
+            Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+            assertEquals(mcts.getTotalIterations(), root.getVisits());
+            assertEquals(0, root.getVirtualLosses());
+            assertTrue(largestBatch.get() > 1);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testPriorsAttachedToChildren() {
+        Evaluator<TicTacToe> evaluator = batch -> {
+            for (Evaluation<TicTacToe> evaluation : batch) {
+                for (int i = 0; i < evaluation.getActionCount(); i++) {
+                    evaluation.setPrior(i, evaluation.getAction(i) == 4
+                        ? .9f
+                        : .1f / (evaluation.getActionCount() - 1));
+                }
+            }
+        };
+        try (EvaluationQueue<TicTacToe> evaluations = new EvaluationQueue<>(evaluator, 1, 0, TimeUnit.MILLISECONDS)) {
+            Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 200);
+            mcts.setEvaluationQueue(evaluations);
+            mcts.setSelectionPolicy(SelectionPolicy.puct(2));
+            mcts.setRoot(-1, TicTacToe.start(3));
+            mcts.think();
+
+            Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+            Node<TicTacToe> center = root.findChildFor(4);
+            assertEquals(.9f, center.getPrior(), 0);
+            for (int i = 0; i < root.getChildCount(); i++)
+                assertTrue(root.getChild(i).getVisits() <= center.getVisits());
+        }
+    }
+
+    @Test
+    public void testRootEvaluatedOnce() {
+        AtomicInteger rootEvaluations = new AtomicInteger();
+        RolloutEvaluator<TicTacToe> rollouts = new RolloutEvaluator<>(new Random(1), 1);
+        Evaluator<TicTacToe> evaluator = batch -> {
+            for (Evaluation<TicTacToe> evaluation : batch) {
+                if (evaluation.getActionCount() == 16)
+                    rootEvaluations.incrementAndGet();
+            }
+            rollouts.evaluate(batch);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (EvaluationQueue<TicTacToe> evaluations = new EvaluationQueue<>(evaluator, threads, 50, TimeUnit.MILLISECONDS)) {
+            Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 20);
+            mcts.setEvaluationQueue(evaluations);
+            mcts.setRoot(-1, TicTacToe.start(4, 3));
+            mcts.think();
+        }
+        executor.shutdown();
+        assertEquals(1, rootEvaluations.get());
+    }
+
+    @Test
+    public void testErrorsFailTheBatchOnly() {
+        AtomicInteger calls = new AtomicInteger();
+        RolloutEvaluator<TicTacToe> rollouts = new RolloutEvaluator<>(new Random(1), 1);
+        Evaluator<TicTacToe> evaluator = batch -> {
+            if (calls.incrementAndGet() == 1)
+                throw new AssertionError("broken evaluator");
+            rollouts.evaluate(batch);
+        };
+        try (EvaluationQueue<TicTacToe> evaluations = new EvaluationQueue<>(evaluator, 1, 0, TimeUnit.MILLISECONDS)) {
+            Evaluation<TicTacToe> evaluation = new Evaluation<>();
+            TicTacToe state = TicTacToe.start(3);
+            evaluation.reset(state, state.getAvailableActions(), 9);
+            evaluations.evaluate(evaluation);
+            try {
+                evaluation.getValue();
+                fail();
+            } catch (IllegalStateException e) {
+                assertTrue(e.getCause() instanceof AssertionError);
+            }
+
+            // the queue thread survived the error
+            evaluation.reset(state, state.getAvailableActions(), 9);
+            evaluations.evaluate(evaluation);
+            assertEquals(.5, evaluation.getValue(), .5);
+        }
+    }
+
+    @Test
+    public void testEvaluatorErrorsFailTheSearch() {
+        AtomicInteger calls = new AtomicInteger();
+        RolloutEvaluator<TicTacToe> rollouts = new RolloutEvaluator<>(new Random(1), 1);
+        Evaluator<TicTacToe> evaluator = batch -> {
+            if (calls.incrementAndGet() == 3)
+                throw new AssertionError("broken evaluator");
+            rollouts.evaluate(batch);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (EvaluationQueue<TicTacToe> evaluations = new EvaluationQueue<>(evaluator, 1, 0, TimeUnit.MILLISECONDS)) {
+            Mcts<TicTacToe> mcts = new Mcts<>(executor, 2, Long.MAX_VALUE, 100);
+            mcts.setEvaluationQueue(evaluations);
+            mcts.setRoot(-1, TicTacToe.start(4, 3));
+            try {
+                mcts.think();
+                fail();
+            } catch (IllegalStateException e) {
+                assertTrue(e.getCause().getCause() instanceof AssertionError);
+            }
+
+            // the failed iteration left no virtual loss behind
+            Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+            assertEquals(0, root.getVirtualLosses());
+            for (int i = 0; i < root.getChildCount(); i++)
+                assertEquals(0, root.getChild(i).getVirtualLosses());
+            mcts.think();
+            assertNotNull(mcts.takeAction());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testClosedQueueRejectsLeaves() {
+        EvaluationQueue<TicTacToe> evaluations =
+            new EvaluationQueue<>(batch -> {}, 1, 0, TimeUnit.MILLISECONDS);
+        evaluations.close();
+        Evaluation<TicTacToe> evaluation = new Evaluation<>();
+        TicTacToe state = TicTacToe.start(3);
+        evaluation.reset(state, state.getAvailableActions(), 9);
+        try {
+            evaluations.evaluate(evaluation);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("evaluation queue is closed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRolloutEvaluatorDraws3x3() {
+        try (EvaluationQueue<TicTacToe> evaluations = new EvaluationQueue<>(
+            new RolloutEvaluator<>(new Random(1), 1), 1, 0, TimeUnit.MILLISECONDS)) {
+            int[] scores = TestTicTacToe.testScores(20, 3, 3, null, null, 1, 1, 10000, 10000, 1000, 1000,
+                play -> {
+                    play.getMcts(1).setEvaluationQueue(evaluations);
+                    play.getMcts(2).setEvaluationQueue(evaluations);
+                });
+            assertTrue(scores[0] >= 18);
+        }
+    }
+
+}
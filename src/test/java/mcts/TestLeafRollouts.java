@@ -0,0 +1,31 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestLeafRollouts {
+    private final int threads = 8;
+
+    @Test
+    public void testLeafRolloutsCountAsVisits() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 500);
+        mcts.setLeafRollouts(4);
+        mcts.setVirtualLoss(1);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        executor.shutdown();
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(4 * mcts.getTotalIterations(), root.getVisits());
+        assertEquals(0, root.getVirtualLosses());
+        Node<TicTacToe> best = root.childToExploit();
+        assertEquals(0, best.getVisits() % 4);
+        assertTrue(best.getRewards() <= best.getVisits());
+    }
+
+}
@@ -0,0 +1,47 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+
+import org.junit.Test;
+
+public class TestMaxNodes {
+
+    @Test
+    public void testMaxNodesBoundsTheTree() {
+        int maxNodes = 300;
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+        mcts.setMaxNodes(maxNodes);
+        TicTacToe state = TicTacToe.start(6, 4);
+        int action = -1;
+        while (!state.isTerminal()) {
+            mcts.setRoot(action, state);
+            mcts.think();
+            assertTrue(mcts.getNodeCount() <= maxNodes);
+            assertEquals(countNodes(mcts), mcts.getNodeCount());
+
+            state = (TicTacToe) mcts.takeAction();
+            action = mcts.getLastAction();
+            assertTrue(mcts.getNodeCount() < maxNodes);
+            assertEquals(countNodes(mcts), mcts.getNodeCount());
+        }
+        assertTrue(mcts.getRecycledCount() > 0);
+    }
+
+    static int countNodes(Mcts<TicTacToe> mcts) {
+        int count = 0;
+        ArrayDeque<Node<TicTacToe>> pending = new ArrayDeque<>();
+        pending.push(((NodeTree<TicTacToe>) mcts.getTree()).getRoot());
+        while (!pending.isEmpty()) {
+            Node<TicTacToe> node = pending.pop();
+            count++;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                if (node.getChild(i) != null)
+                    pending.push(node.getChild(i));
+            }
+        }
+        return count;
+    }
+
+}
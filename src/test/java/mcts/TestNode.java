@@ -0,0 +1,68 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TestNode {
+    private final int threads = 8;
+    private final int updates = 200000;
+
+    @Test
+    public void testConcurrentRewardsAreNotLost() throws Exception {
+        Node<TicTacToe> node = new Node<>(null, -1, TicTacToe.start(3));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Collection<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            double reward = t % 2 == 0
+                ? 1.
+                : .5;
+            tasks.add(() -> {
+                start.await();
+                for (int i = 0; i < updates; i++)
+                    node.updateRewards(reward);
+                return null;
+            });
+        }
+
+        Collection<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks)
+            futures.add(executor.submit(task));
+        start.countDown();
+        for (Future<Void> future : futures)
+            future.get();
+        executor.shutdown();
+
+        assertEquals(threads * updates, node.getVisits());
+        assertEquals(threads / 2 * updates * 1.5, node.getRewards(), 0);
+    }
+
+    @Test
+    public void testVirtualLossIsRevertedAfterThink() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 2000);
+        mcts.setVirtualLoss(3);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        executor.shutdown();
+
+        Node<TicTacToe> node = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(0, node.getVirtualLosses());
+        assertEquals(mcts.getTotalIterations(), node.getVisits());
+        while (!node.isTerminal() && node.isExpanded()) {
+            node = node.childToExploit();
+            assertEquals(0, node.getVirtualLosses());
+        }
+    }
+
+}
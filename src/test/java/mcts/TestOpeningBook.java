@@ -0,0 +1,159 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestOpeningBook {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSnapshotKeepsTopLevels() throws IOException {
+        Mcts<TicTacToe> searched = search(TicTacToe.start(3), 20000);
+        Path file = folder.newFile().toPath();
+        searched.writeSnapshot(file, 2);
+
+        OpeningBook book = OpeningBook.open(file);
+        assertEquals(2, book.getLevels());
+        assertEquals(1 + 9 + 9 * 8, book.size());
+        assertEquals(32 + book.size() * 32, Files.size(file));
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) searched.getTree()).getRoot();
+        assertEquals(root.getVisits(), book.getVisits(0));
+        for (int i = 0; i < root.getChildCount(); i++) {
+            Node<TicTacToe> child = root.getChild(i);
+            int index = book.findChild(0, root.getActionAt(i));
+            assertEquals(root.getActionAt(i), book.getAction(index));
+            assertEquals(child.getVisits(), book.getVisits(index));
+            assertEquals(child.getRewards(), book.getRewards(index), 0);
+            assertEquals(8, countChildren(book, index));
+        }
+        assertEquals(OpeningBook.NONE, book.findChild(book.findChild(0, 4), 4));
+    }
+
+    @Test
+    public void testWarmStartFollowsTheGame() throws IOException {
+        TicTacToe start = TicTacToe.start(5, 4);
+        Mcts<TicTacToe> searched = search(start, 50000);
+        Path file = folder.newFile().toPath();
+        searched.writeSnapshot(file, 3);
+        searched.takeAction();
+        OpeningBook book = OpeningBook.open(file);
+
+        Mcts<TicTacToe> warm = new Mcts<>(null, 1, Long.MAX_VALUE, 100);
+        warm.setOpeningBook(book);
+        warm.setRoot(-1, start);
+        warm.think();
+        TicTacToe state = (TicTacToe) warm.takeAction();
+        assertEquals(searched.getLastAction(), warm.getLastAction());
+
+        // the opponent's reply is one level further down the book
+        int taken = book.findChild(0, warm.getLastAction());
+        int replied = mostVisitedChild(book, taken, 25);
+        short reply = book.getAction(replied);
+        warm.setRoot(reply, (TicTacToe) state.takeAction(reply));
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) warm.getTree()).getRoot();
+        assertEquals(replied, root.getBookIndex());
+        assertTrue(root.getVisits() >= book.getVisits(replied));
+    }
+
+    @Test
+    public void testOtherPositionsSearchFromScratch() throws IOException {
+        Mcts<TicTacToe> searched = search(TicTacToe.start(3), 1000);
+        Path file = folder.newFile().toPath();
+        searched.writeSnapshot(file, 1);
+
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 100);
+        mcts.setOpeningBook(OpeningBook.open(file));
+        mcts.setRoot(-1, TicTacToe.start(4));
+        mcts.think();
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(100, root.getVisits());
+    }
+
+    @Test
+    public void testRewardSquaresFollowUcb1Tuned() throws IOException {
+        Mcts<TicTacToe> searched = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+        searched.setSelectionPolicy(SelectionPolicy.ucb1Tuned(1));
+        searched.setRoot(-1, TicTacToe.start(3));
+        searched.think();
+        Path file = folder.newFile().toPath();
+        searched.writeSnapshot(file, 1);
+        OpeningBook book = OpeningBook.open(file);
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) searched.getTree()).getRoot();
+        Node<TicTacToe> child = root.getChild(0);
+        int index = book.findChild(0, root.getActionAt(0));
+        assertEquals(child.getRewardSquares(), book.getRewardSquares(index), 0);
+
+        // a book without squares assumes the widest spread of rewards
+        Path plain = folder.newFile().toPath();
+        search(TicTacToe.start(3), 2000).writeSnapshot(plain, 1);
+        OpeningBook plainBook = OpeningBook.open(plain);
+        assertEquals(plainBook.getRewards(1), plainBook.getRewardSquares(1), 0);
+    }
+
+    @Test
+    public void testHashlessRootsAreNotWritten() throws IOException {
+        TicTacToe start = new TicTacToe((byte) 3, (byte) 3) {
+            @Override
+            public long getHash() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        Mcts<TicTacToe> searched = search(start, 100);
+        Path file = folder.newFile().toPath();
+        try {
+            searched.writeSnapshot(file, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, Files.size(file));
+        }
+
+        // nor found in a book written from a position with a hash
+        search(TicTacToe.start(3), 100).writeSnapshot(file, 1);
+        assertEquals(OpeningBook.NONE, OpeningBook.open(file).findRoot(start));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, new byte[100]);
+        OpeningBook.open(file);
+    }
+
+    private static Mcts<TicTacToe> search(TicTacToe start, int iterations) {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, iterations);
+        mcts.setRoot(-1, start);
+        mcts.think();
+        return mcts;
+    }
+
+    private static int countChildren(OpeningBook book, int node) {
+        int count = 0;
+        for (short action = 0; action < 9; action++) {
+            if (book.findChild(node, action) != OpeningBook.NONE)
+                count++;
+        }
+        return count;
+    }
+
+    private static int mostVisitedChild(OpeningBook book, int node, int actions) {
+        int best = OpeningBook.NONE;
+        for (short action = 0; action < actions; action++) {
+            int child = book.findChild(node, action);
+            if (child != OpeningBook.NONE
+                && (best == OpeningBook.NONE || book.getVisits(child) > book.getVisits(best)))
+                best = child;
+        }
+        return best;
+    }
+
+}
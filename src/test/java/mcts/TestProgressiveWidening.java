@@ -0,0 +1,43 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestProgressiveWidening {
+    private final int threads = 8;
+
+    @Test
+    public void testProgressiveWideningLimitsChildren() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 1000);
+        mcts.setProgressiveWidening(1, .5);
+        mcts.setVirtualLoss(1);
+        mcts.setRoot(-1, TicTacToe.start(19, 5));
+        mcts.think();
+        executor.shutdown();
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(mcts.getTotalIterations(), root.getVisits());
+        assertEquals(361, root.getActionCount());
+        assertTrue(root.getChildCount() <= Math.ceil(Math.sqrt(root.getVisits() + 1)));
+        assertEquals(TestMaxNodes.countNodes(mcts), mcts.getNodeCount());
+        // without widening every iteration would still be expanding the root
+        assertTrue(mcts.getNodeCount() > root.getChildCount() + 1);
+
+        TicTacToe state = (TicTacToe) mcts.takeAction();
+        assertFalse(state.isTerminal());
+    }
+
+    @Test
+    public void testProgressiveWideningDraws3x3() {
+        TestTicTacToe.assertDraws3x3(play -> {
+            play.getMcts(1).setProgressiveWidening(1, .5);
+            play.getMcts(2).setProgressiveWidening(2, .5);
+        });
+    }
+
+}
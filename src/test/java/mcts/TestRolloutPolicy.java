@@ -0,0 +1,60 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestRolloutPolicy {
+
+    @Test
+    public void testHeuristicWinsAndBlocks() {
+        TicTacToe state = TicTacToe.start(3);
+        // X on 0 and 1, O on 3 and 4, X to move wins on 2 rather than block on 5
+        for (short action : new short[] { 0, 3, 1, 4 })
+            state.applyAction(action);
+        TicTacToeRolloutPolicy policy = new TicTacToeRolloutPolicy();
+        short[] actions = state.getAvailableActions();
+        assertEquals(2, policy.chooseAction(state, actions, actions.length, new Random()));
+
+        state = TicTacToe.start(3);
+        for (short action : new short[] { 0, 3, 8, 4 })
+            state.applyAction(action);
+        actions = state.getAvailableActions();
+        assertEquals(5, policy.chooseAction(state, actions, actions.length, new Random()));
+    }
+
+    @Test
+    public void testCutOffRolloutsAreEvaluated() {
+        Rollout<TicTacToe> rollout =
+            new Rollout<>(new Random(), 0, new TicTacToeRolloutPolicy(2));
+        TicTacToe end = rollout.play(TicTacToe.start(5, 4));
+        assertFalse(end.isTerminal());
+        assertEquals(.5, rollout.getReward(end, 1), 0);
+        assertEquals(.5, rollout.getReward(end, 2), 0);
+    }
+
+    @Test
+    public void testMastLearnsFromRollouts() {
+        MastRolloutPolicy<TicTacToe> mast = new MastRolloutPolicy<>(1);
+        Rollout<TicTacToe> rollout = new Rollout<>(new Random(), 0, mast);
+        for (int i = 0; i < 2000; i++)
+            rollout.play(TicTacToe.start(3));
+        // the center is on more lines than an edge
+        assertTrue(mast.getMean((short) 4) > mast.getMean((short) 1));
+    }
+
+    @Test
+    public void testPoliciesDraw3x3() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        TestTicTacToe.assertDraws3x3(executor, null, 2, 1, 1000, play -> {
+            play.getMcts(1).setRolloutPolicy(TicTacToeRolloutPolicy::new);
+            play.getMcts(2).setRolloutPolicy(() -> new MastRolloutPolicy<>(.2));
+        });
+        executor.shutdown();
+    }
+
+}
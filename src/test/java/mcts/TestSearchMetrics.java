@@ -0,0 +1,82 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class TestSearchMetrics {
+
+    @Test
+    public void testMetricsAreOffByDefault() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 500);
+        mcts.setRoot(-1, TicTacToe.start(3));
+        mcts.think();
+        assertEquals(500, mcts.getTotalIterations());
+        assertEquals(0, mcts.getMetrics().getIterations());
+    }
+
+    @Test
+    public void testMetricsCountEveryIteration() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, 4, Long.MAX_VALUE, 2000);
+        mcts.setMetrics(true);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        executor.shutdown();
+
+        SearchMetrics metrics = mcts.getMetrics();
+        assertEquals(mcts.getTotalIterations(), metrics.getIterations());
+        long depths = 0;
+        for (long count : metrics.getDepthHistogram())
+            depths += count;
+        assertEquals(metrics.getIterations(), depths);
+        assertEquals(mcts.getNodeCount() - 1, metrics.getExpansions());
+        assertEquals(metrics.getExpansions(), metrics.getNodesAllocated());
+        assertTrue(metrics.getRolloutPlies() > metrics.getIterations());
+        assertTrue(metrics.getMeanDepth() >= 1);
+        assertTrue(metrics.getSelectNanos() > 0);
+        assertTrue(metrics.getSimulateNanos() > 0);
+        assertTrue(metrics.getBackPropagateNanos() > 0);
+    }
+
+    @Test
+    public void testArrayTreeMetrics() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 1000);
+        mcts.setArrayTree(1 << 16);
+        mcts.setMetrics(true);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+
+        SearchMetrics metrics = mcts.getMetrics();
+        assertEquals(mcts.getTotalIterations(), metrics.getIterations());
+        assertTrue(metrics.getExpansions() > 0);
+        assertTrue(metrics.getMeanDepth() >= 1);
+    }
+
+    @Test
+    public void testMetricsOverJmx() throws Exception {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 300);
+        mcts.setMetrics(true);
+        ObjectName name = mcts.registerMetrics("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            mcts.setRoot(-1, TicTacToe.start(3));
+            mcts.think();
+            assertEquals(300L, server.getAttribute(name, "Iterations"));
+            assertEquals(32, ((long[]) server.getAttribute(name, "DepthHistogram")).length);
+
+            mcts.setMetrics(false);
+            assertEquals(0L, server.getAttribute(name, "Iterations"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestSearchScheduler {
+
+    @Test
+    public void testManyGamesShareWorkers() throws Exception {
+        List<SearchScheduler.Game> games = new ArrayList<>();
+        List<CompletableFuture<Integer>> searches = new ArrayList<>();
+        try (SearchScheduler scheduler = new SearchScheduler(2)) {
+            for (int i = 0; i < 16; i++) {
+                Mcts<TicTacToe> mcts = new Mcts<>(null, 2, Long.MAX_VALUE, 500);
+                mcts.setRoot(-1, TicTacToe.start(4, 3));
+                SearchScheduler.Game game = scheduler.newGame(mcts, 0);
+                games.add(game);
+                searches.add(game.search(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+            }
+            for (CompletableFuture<Integer> search : searches) {
+                int action = search.get();
+                assertTrue(action >= 0 && action < 16);
+            }
+        }
+        for (SearchScheduler.Game game : games) {
+            assertEquals(1, game.getSearches());
+            assertTrue(game.getIterations() > 0 && game.getIterations() <= 1000);
+            assertTrue(game.getIterationsPerSecond() > 0);
+            assertTrue(game.getLatencyNanos(99) >= game.getLatencyNanos(50));
+            assertTrue(game.getLatencyNanos(50) > 0);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPonderingYieldsToEverySearch() throws Exception {
+        try (SearchScheduler scheduler = new SearchScheduler(1)) {
+            Mcts<TicTacToe> pondering = new Mcts<>(null, 1, Long.MAX_VALUE, 200);
+            SearchScheduler.Game ponderingGame = pondering.setScheduler(scheduler, 1);
+            pondering.setRoot(-1, TicTacToe.start(5, 4));
+            pondering.startPondering();
+            while (pondering.getPonderIterations() < 500)
+                Thread.sleep(1);
+
+            // pondering never ends by itself, a lower priority search still runs
+            Mcts<TicTacToe> searching = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+            searching.setRoot(-1, TicTacToe.start(4, 3));
+            SearchScheduler.Game game = scheduler.newGame(searching, 0);
+            game.search(Long.MAX_VALUE, TimeUnit.MILLISECONDS).get();
+            assertEquals(2000, game.getIterations());
+
+            pondering.stopPondering();
+            assertEquals(0, pondering.getTotalIterations());
+            assertEquals(0, ponderingGame.getSearches());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testStopPonderingOnABusyPool() throws Exception {
+        try (SearchScheduler scheduler = new SearchScheduler(1)) {
+            Mcts<TicTacToe> pondering = new Mcts<>(null, 2, Long.MAX_VALUE, 200);
+            pondering.setScheduler(scheduler, 0);
+            pondering.setRoot(-1, TicTacToe.start(5, 4));
+            pondering.startPondering();
+            while (pondering.getPonderIterations() < 500)
+                Thread.sleep(1);
+
+            // the only worker is busy with another game's search for the next seconds
+            Mcts<TicTacToe> searching = new Mcts<>(null, 1, Long.MAX_VALUE, Integer.MAX_VALUE);
+            searching.setRoot(-1, TicTacToe.start(5, 4));
+            SearchScheduler.Game game = scheduler.newGame(searching, 0);
+            CompletableFuture<Void> busy = CompletableFuture.runAsync(
+                () -> game.think(3, TimeUnit.SECONDS));
+            while (searching.getTotalIterations() < 500)
+                Thread.sleep(1);
+
+            long started = System.nanoTime();
+            pondering.stopPondering();
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+            assertFalse(busy.isDone());
+            pondering.setRoot(-1, TicTacToe.start(4, 3));
+            busy.get();
+        }
+    }
+
+    @Test
+    public void testPriorityPreempts() throws Exception {
+        CompletableFuture<Integer> low;
+        try (SearchScheduler scheduler = new SearchScheduler(1)) {
+            Mcts<TicTacToe> background = new Mcts<>(null, 1, Long.MAX_VALUE, Integer.MAX_VALUE);
+            background.setRoot(-1, TicTacToe.start(5, 4));
+            low = scheduler.newGame(background, 0)
+                .search(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            while (background.getTotalIterations() < 1000)
+                Thread.sleep(1);
+
+            Mcts<TicTacToe> urgent = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+            urgent.setRoot(-1, TicTacToe.start(4, 3));
+            SearchScheduler.Game game = scheduler.newGame(urgent, 1);
+            int action = game.search(Long.MAX_VALUE, TimeUnit.MILLISECONDS).get();
+            assertTrue(action >= 0 && action < 16);
+            assertFalse(low.isDone());
+            // the search may stop early once its action is decided
+            assertEquals(urgent.getTotalIterations(), game.getIterations());
+            assertTrue(game.getIterations() > 0 && game.getIterations() <= 2000);
+        }
+        assertTrue(low.isCancelled());
+    }
+
+    @Test
+    public void testCloseCancelsQueuedSearches() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 2, Long.MAX_VALUE, Integer.MAX_VALUE);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        CompletableFuture<Integer> search;
+        try (SearchScheduler scheduler = new SearchScheduler(1)) {
+            search = scheduler.newGame(mcts, 0).search(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(search.isCancelled());
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+    }
+
+    @Test
+    public void testGamesOnVirtualThreads() throws Exception {
+        ExecutorService games = VirtualThreads.newPerTaskExecutor();
+        List<Future<Integer>> winners = new ArrayList<>();
+        try (SearchScheduler scheduler = new SearchScheduler(2)) {
+            for (int i = 0; i < 20; i++) {
+                SelfPlay<TicTacToe> play = new SelfPlay<>(
+                    TicTacToe.start(3, 3), null, null, 2, 2, 10000, 10000, 500, 500);
+                play.getMcts(1).setScheduler(scheduler, 0);
+                play.getMcts(2).setScheduler(scheduler, 0);
+                winners.add(games.submit(play::play));
+            }
+            int draws = 0;
+            for (Future<Integer> winner : winners) {
+                if (winner.get() == 0)
+                    draws++;
+            }
+            assertTrue(draws >= 16);
+        }
+        games.shutdown();
+    }
+
+}
@@ -0,0 +1,26 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestSelectionPolicy {
+
+    @Test
+    public void testSelectionPolicies3x3() {
+        SelectionPolicy[] policies = { SelectionPolicy.ucb1Tuned(1), SelectionPolicy.puct(2) };
+        for (SelectionPolicy policy : policies)
+            TestTicTacToe.assertDraws3x3(play -> play.getMcts(1).setSelectionPolicy(policy));
+    }
+
+    @Test
+    public void testSelectionTablesMatchMath() {
+        for (int n = 1; n < 5000; n += 7) {
+            assertEquals(Math.log(n), SelectionPolicy.log(n), 1e-12);
+            assertEquals(Math.sqrt(Math.log(n)), SelectionPolicy.sqrtLog(n), 1e-12);
+            assertEquals(Math.sqrt(n), SelectionPolicy.sqrt(n), 1e-12);
+            assertEquals(1 / Math.sqrt(n), SelectionPolicy.invSqrt(n), 1e-12);
+        }
+    }
+
+}
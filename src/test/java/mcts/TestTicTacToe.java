@@ -3,8 +3,11 @@ package mcts;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -46,6 +49,208 @@ public class TestTicTacToe {
         assertTrue(scores[1] * 1.5 < scores[2]);
     }
 
+    @Test
+    public void testRootParallel3x3() {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        assertDraws3x3(executor, executor, threads, threads, 250, play -> {
+            play.getMcts(1).setRootParallel(threads);
+            play.getMcts(2).setRootParallel(2);
+        });
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRootParallelMergesAllTrees() {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 500);
+        mcts.setRootParallel(threads);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        executor.shutdown();
+
+        ActionStatistics statistics = new ActionStatistics();
+        mcts.getTree().addRootStatistics(statistics);
+        long visits = 0;
+        for (short action = 0; action < 16; action++)
+            visits += statistics.getVisits(action);
+        assertEquals(mcts.getTotalIterations(), visits);
+        assertFalse(mcts.takeAction().isTerminal());
+    }
+
+    @Test
+    public void testRootParallelAfterSetRootKeepsTheRoot() {
+        int threads = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 500);
+        TicTacToe state = (TicTacToe) TicTacToe.start(4, 3).takeAction((short) 5);
+        mcts.setRoot(5, state);
+        mcts.setRootParallel(threads);
+        mcts.think();
+        executor.shutdown();
+
+        // the new trees search from the root set before them
+        ActionStatistics statistics = new ActionStatistics();
+        mcts.getTree().addRootStatistics(statistics);
+        assertEquals(0, statistics.getVisits((short) 5));
+        assertEquals(14, mcts.takeAction().getAvailableActions().length);
+    }
+
+    @Test
+    public void testPonderingWarmsReply() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, 1, Long.MAX_VALUE, 200);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        TicTacToe state = (TicTacToe) mcts.takeAction();
+        mcts.startPondering();
+        while (mcts.getPonderIterations() < 500)
+            Thread.sleep(1);
+        short reply = state.getAvailableActions()[0];
+        state.applyAction(reply);
+        mcts.setRoot(reply, state);
+        executor.shutdown();
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertTrue(root.getVisits() > 0);
+        assertEquals(200, mcts.getTotalIterations());
+    }
+
+    @Test(timeout = 60000)
+    public void testPonderingStopsOnAFullTree() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, 1, Long.MAX_VALUE, 100);
+        mcts.setMaxNodes(1000);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.startPondering();
+
+        // the pondering task ends by itself once no node can be added
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        mcts.stopPondering();
+        assertEquals(1000, mcts.getNodeCount());
+    }
+
+    @Test
+    public void testPondering3x3() {
+        ExecutorService executor1 = Executors.newSingleThreadExecutor();
+        ExecutorService executor2 = Executors.newSingleThreadExecutor();
+        assertDraws3x3(executor1, executor2, 1, 1, 1000, play -> play.setPondering(true));
+        executor1.shutdown();
+        executor2.shutdown();
+    }
+
+    @Test
+    public void testSearchAsyncStopsOnceDecided() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, 2, Long.MAX_VALUE, 5000);
+        TicTacToe state = TicTacToe.start(3, 3);
+        for (short action : new short[] { 0, 3, 1, 4 })
+            state.applyAction(action);
+        mcts.setRoot(-1, state);
+        int action = mcts.searchAsync().get();
+        executor.shutdown();
+
+        assertEquals(2, action);
+        assertEquals(2, mcts.getLastAction());
+        assertTrue(mcts.getTotalIterations() < 10000);
+    }
+
+    @Test
+    public void testSearchAsyncStopsOnceDecidedAmongManyActions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, 1, Long.MAX_VALUE, 20000);
+        TicTacToe state = TicTacToe.start(4, 3);
+        for (short action : new short[] { 0, 4, 1, 5 })
+            state.applyAction(action);
+        mcts.setRoot(-1, state);
+        int action = mcts.searchAsync().get();
+        executor.shutdown();
+
+        assertEquals(2, action);
+        assertTrue(mcts.getTotalIterations() < 20000);
+    }
+
+    @Test
+    public void testUnvisitedActionsAreChallengers() {
+        ActionStatistics statistics = new ActionStatistics();
+        statistics.add((short) 0, 10, 9);
+        statistics.add((short) 1, 10, 1);
+        assertFalse(statistics.isDecided(1, 3));
+        assertTrue(statistics.isDecided(0, 3));
+        assertTrue(statistics.isDecided(1, 2));
+    }
+
+    @Test
+    public void testSearchAsyncCancelAndDeadline() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, 2, Long.MAX_VALUE, Integer.MAX_VALUE);
+        TicTacToe state = TicTacToe.start(4, 3);
+        mcts.setRoot(-1, state);
+        CompletableFuture<Integer> search = mcts.searchAsync();
+        while (mcts.getTotalIterations() < 1000)
+            Thread.sleep(1);
+        assertTrue(search.cancel(true));
+        mcts.setRoot(-1, state);
+
+        long started = System.nanoTime();
+        int action = mcts.searchAsync(50, TimeUnit.MILLISECONDS).get();
+        executor.shutdown();
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(action >= 0 && action < 16);
+    }
+
+    @Test
+    public void testSeededSelfPlayRepeats() {
+        ReplayLog first = playSeeded(42);
+        ReplayLog second = playSeeded(42);
+        assertFalse(first.getLines().isEmpty());
+        assertEquals(-1, first.firstDifference(second));
+        assertNotEquals(-1, first.firstDifference(playSeeded(43)));
+    }
+
+    private ReplayLog playSeeded(long seed) {
+        ReplayLog log = new ReplayLog();
+        for (int i = 0; i < 3; i++) {
+            SelfPlay<TicTacToe> play = new SelfPlay<>(
+                TicTacToe.start(5, 4),
+                null,
+                null,
+                1,
+                1,
+                timePerActionSec1,
+                timePerActionSec2,
+                300,
+                300);
+            play.setSeed(seed + i);
+            play.setReplayLog(log);
+            play.getMcts(2).setProgressiveWidening(1, .5);
+            play.getMcts(2).setRolloutPolicy(() -> new MastRolloutPolicy<>(.2));
+            play.play();
+        }
+        return log;
+    }
+
+    @Test
+    public void testHashIgnoresMoveOrder() {
+        TicTacToe a = TicTacToe.start(3);
+        a.applyAction((short) 0);
+        a.applyAction((short) 4);
+        a.applyAction((short) 8);
+        TicTacToe b = TicTacToe.start(3);
+        b.applyAction((short) 8);
+        b.applyAction((short) 4);
+        b.applyAction((short) 0);
+        TicTacToe c = TicTacToe.start(3);
+        c.applyAction((short) 4);
+        c.applyAction((short) 0);
+        c.applyAction((short) 8);
+        assertEquals(a.getHash(), b.getHash());
+        assertNotEquals(a.getHash(), c.getHash());
+        assertEquals(a.getHash(), a.copy().getHash());
+    }
+
     @Test
     @Ignore
     public void testSingleVsMultiThreaded10x8() {
@@ -76,8 +281,6 @@ public class TestTicTacToe {
     }
 
     private int[] testScores(int times) {
-        int[] scores = new int[3];
-
         ExecutorService executor1 = threads1 > 1
             ? Executors.newFixedThreadPool(threads1)
             : null;
@@ -86,10 +289,56 @@ public class TestTicTacToe {
             ? Executors.newFixedThreadPool(threads2)
             : null;
 
+        int[] scores = testScores(times, dim, needed, executor1, executor2,
+            threads1, threads2, timePerActionSec1, timePerActionSec2, maxIterations1, maxIterations2,
+            play -> {});
+
+        if (executor1 != null)
+            executor1.shutdown();
+        if (executor2 != null)
+            executor2.shutdown();
+
+        return scores;
+    }
+
+    // 50 games of 3x3, where both players must keep drawing with the features setup gives them
+    static void assertDraws3x3(Consumer<SelfPlay<TicTacToe>> setup) {
+        assertDraws3x3(null, null, 1, 1, 1000, setup);
+    }
+
+    static void assertDraws3x3(
+        ExecutorService executor1,
+        ExecutorService executor2,
+        int threads1,
+        int threads2,
+        int maxIterations,
+        Consumer<SelfPlay<TicTacToe>> setup) {
+
+        int[] scores = testScores(50, 3, 3, executor1, executor2, threads1, threads2,
+            10000, 10000, maxIterations, maxIterations, setup);
+        System.out.println(Arrays.toString(scores));
+        assertTrue(scores[0] > 45);
+    }
+
+    // the draws and the wins of each player, setup configures the players of every game
+    static int[] testScores(
+        int times,
+        int dim,
+        int needed,
+        ExecutorService executor1,
+        ExecutorService executor2,
+        int threads1,
+        int threads2,
+        int timePerActionSec1,
+        int timePerActionSec2,
+        int maxIterations1,
+        int maxIterations2,
+        Consumer<SelfPlay<TicTacToe>> setup) {
+
+        int[] scores = new int[3];
         for (int i = 0; i < times; i++) {
-            TicTacToe startState = TicTacToe.start(dim, needed);
             SelfPlay<TicTacToe> play = new SelfPlay<>(
-                startState,
+                TicTacToe.start(dim, needed),
                 executor1,
                 executor2,
                 threads1,
@@ -98,18 +347,13 @@ public class TestTicTacToe {
                 timePerActionSec2,
                 maxIterations1,
                 maxIterations2);
+            setup.accept(play);
 
             int winner = play.play();
 
             scores[winner]++;
             // System.out.println(Arrays.toString(scores));
         }
-
-        if (executor1 != null)
-            executor1.shutdown();
-        if (executor2 != null)
-            executor2.shutdown();
-
         return scores;
     }
 
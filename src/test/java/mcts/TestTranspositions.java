@@ -0,0 +1,76 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestTranspositions {
+    private final int threads = 8;
+
+    @Test
+    public void testTranspositionsShareNodes() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 20000);
+        mcts.setTranspositions(1 << 14);
+        mcts.setRoot(-1, TicTacToe.start(3));
+        mcts.think();
+
+        // 3x3 has 5478 legal positions, a tree would need a node per move order
+        assertTrue(mcts.getNodeCount() <= 5478);
+        assertEquals(20000, ((NodeTree<TicTacToe>) mcts.getTree()).getRoot().getVisits());
+    }
+
+    @Test
+    public void testTranspositionsOnASearchedTree() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+        mcts.setActionNodeTree();
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        mcts.setTranspositions(1 << 14);
+        mcts.think();
+
+        // every node is found under the hash of its own position
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        ArrayDeque<Node<TicTacToe>> pending = new ArrayDeque<>();
+        ArrayDeque<TicTacToe> states = new ArrayDeque<>();
+        pending.push(root);
+        states.push(root.getState());
+        while (!pending.isEmpty()) {
+            Node<TicTacToe> node = pending.pop();
+            TicTacToe state = states.pop();
+            assertEquals(state.getHash(), node.getHash());
+            for (int i = 0; i < node.getChildCount(); i++) {
+                if (node.getChild(i) == null)
+                    continue;
+                pending.push(node.getChild(i));
+                states.push((TicTacToe) state.takeAction(node.getActionAt(i)));
+            }
+        }
+        assertEquals(4000, root.getVisits());
+    }
+
+    @Test
+    public void testParallelTranspositions() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Mcts<TicTacToe> mcts = new Mcts<>(executor, threads, Long.MAX_VALUE, 2000);
+        mcts.setActionNodeTree();
+        mcts.setTranspositions(1 << 16);
+        mcts.setVirtualLoss(1);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        executor.shutdown();
+
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(mcts.getTotalIterations(), root.getVisits());
+        assertEquals(0, root.getVirtualLosses());
+    }
+
+    @Test
+    public void testTranspositionsDraw3x3() {
+        TestTicTacToe.assertDraws3x3(play -> play.getMcts(1).setTranspositions(1 << 14));
+    }
+
+}
@@ -0,0 +1,151 @@
+package mcts;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestTreeReuse {
+
+    @Test
+    public void testReuseKeepsTheVisitsOfTheActionTaken() {
+        Mcts<TicTacToe> mcts = search(TicTacToe.start(5, 4), 5000);
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        int rootVisits = root.getVisits();
+        TicTacToe state = (TicTacToe) mcts.takeAction();
+        Node<TicTacToe> child = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+
+        assertEquals((double) child.getVisits() / rootVisits, mcts.getLastRetainedFraction(), 0);
+        assertEquals(mcts.getLastRetainedFraction(), mcts.getRetainedFraction(), 0);
+
+        // the opponent's reply keeps the grandchild, a move outside the tree keeps nothing
+        short reply = child.getActionAt(0);
+        Node<TicTacToe> grandchild = child.findChildFor(reply);
+        mcts.setRoot(reply, (TicTacToe) state.takeAction(reply));
+        assertSame(grandchild, ((NodeTree<TicTacToe>) mcts.getTree()).getRoot());
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        assertEquals(0, mcts.getLastRetainedFraction(), 0);
+    }
+
+    @Test
+    public void testWithoutReuseEveryRootIsFresh() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 2000);
+        mcts.setTreeReuse(false);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        TicTacToe state = (TicTacToe) mcts.takeAction();
+        short reply = state.getAvailableActions()[0];
+        mcts.setRoot(reply, (TicTacToe) state.takeAction(reply));
+
+        assertEquals(0, ((NodeTree<TicTacToe>) mcts.getTree()).getRoot().getVisits());
+        assertEquals(0, mcts.getLastRetainedFraction(), 0);
+    }
+
+    @Test
+    public void testArrayTreeReportsRetainedVisits() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 5000);
+        mcts.setArrayTree(1 << 16);
+        mcts.setRoot(-1, TicTacToe.start(5, 4));
+        mcts.think();
+        mcts.takeAction();
+
+        double fraction = mcts.getLastRetainedFraction();
+        assertTrue(fraction > 0 && fraction < 1);
+    }
+
+    @Test
+    public void testWideNodeFindsEveryChild() {
+        // 36 actions, more than a node scans linearly
+        Mcts<TicTacToe> mcts = search(TicTacToe.start(6, 4), 200);
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertTrue(root.isExpanded());
+        for (int i = 0; i < root.getChildCount(); i++)
+            assertSame(root.getChild(i), root.findChildFor(root.getActionAt(i)));
+        assertNull(root.findChildFor(36));
+
+        // actions taken so far are no longer available
+        Node<TicTacToe> child = root.getChild(0);
+        assertEquals(-1, child.indexOfAction(root.getActionAt(0)));
+    }
+
+    @Test
+    public void testActionIndexGrows() {
+        ActionIndex index = new ActionIndex(2);
+        for (int i = 0; i < 1000; i++)
+            index.put((short) (i * 7), i);
+        index.put((short) 7, 5000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i == 1 ? 5000 : i, index.get((short) (i * 7)));
+            assertEquals(-1, index.get((short) (i * 7 + 1)));
+        }
+        index.clear();
+        assertEquals(-1, index.get((short) 0));
+    }
+
+    @Test
+    public void testTranspositionsRecycleDroppedNodes() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 5000);
+        mcts.setTranspositions(1 << 14);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        int before = mcts.getNodeCount();
+        mcts.takeAction();
+
+        assertTrue(mcts.getRecycledCount() > 0);
+        assertTrue(mcts.getNodeCount() < before);
+
+        // recycled nodes come back as fresh ones
+        mcts.think();
+        Node<TicTacToe> root = ((NodeTree<TicTacToe>) mcts.getTree()).getRoot();
+        assertEquals(0, root.getVirtualLosses());
+        assertTrue(root.getVisits() >= 5000);
+    }
+
+    @Test
+    public void testKeptNodesNeverPointAtRecycledParents() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 5000);
+        mcts.setTranspositions(1 << 14);
+        mcts.setRoot(-1, TicTacToe.start(4, 3));
+        mcts.think();
+        mcts.takeAction();
+
+        Set<Node<TicTacToe>> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Node<TicTacToe>> pending = new ArrayDeque<>();
+        pending.push(((NodeTree<TicTacToe>) mcts.getTree()).getRoot());
+        while (!pending.isEmpty()) {
+            Node<TicTacToe> node = pending.pop();
+            if (!kept.add(node))
+                continue;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                if (node.getChild(i) != null)
+                    pending.push(node.getChild(i));
+            }
+        }
+        for (Node<TicTacToe> node : kept)
+            assertTrue(node.getParent() == null || kept.contains(node.getParent()));
+    }
+
+    @Test
+    public void testRootPreExpansion() {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, 100);
+        mcts.setRootPreExpansion(true);
+        mcts.setRoot(-1, TicTacToe.start(6, 4));
+
+        assertTrue(mcts.getTree().isRootExpanded());
+        assertEquals(0, mcts.getTotalIterations());
+        mcts.think();
+        assertEquals(100, mcts.getTotalIterations());
+    }
+
+    private static Mcts<TicTacToe> search(TicTacToe start, int iterations) {
+        Mcts<TicTacToe> mcts = new Mcts<>(null, 1, Long.MAX_VALUE, iterations);
+        mcts.setRoot(-1, start);
+        mcts.think();
+        return mcts;
+    }
+
+}
@@ -20,6 +20,7 @@ public class TicTacToe implements State {
     private byte agent;
     private byte winner;
     private int round;
+    private long hash;
 
     public TicTacToe(byte dims, byte needed) {
         assert dims >= needed;
@@ -37,6 +38,7 @@ public class TicTacToe implements State {
         round = o.round;
         winner = o.winner;
         dim = o.dim;
+        hash = o.hash;
     }
 
     public TicTacToe(TicTacToe o, short action) {
@@ -45,6 +47,7 @@ public class TicTacToe implements State {
         needed = o.needed;
         round = o.round;
         dim = o.dim;
+        hash = o.hash;
         winner = updateWith(action);
     }
 
@@ -53,6 +56,21 @@ public class TicTacToe implements State {
         return new TicTacToe(this);
     }
 
+    @Override
+    public State copyTo(State scratch) {
+        if (!(scratch instanceof TicTacToe))
+            return copy();
+        TicTacToe o = (TicTacToe) scratch;
+        if (o.dim != dim || o.needed != needed)
+            return copy();
+        System.arraycopy(board, 0, o.board, 0, board.length);
+        o.agent = agent;
+        o.round = round;
+        o.winner = winner;
+        o.hash = hash;
+        return o;
+    }
+
     @Override
     public boolean isTerminal() {
         return winner < NOT_OVER_YET;
@@ -63,15 +81,30 @@ public class TicTacToe implements State {
         int remaining = dim * dim - round;
         short[] actions = new short[remaining];
         int idx = 0;
-        for (byte i = 0; i < board.length; i++) {
+        for (int i = 0; i < board.length; i++) {
             if (board[i] == 0) {
-                actions[idx++] = i;
+                actions[idx++] = (short) i;
             }
         }
         assert idx == remaining;
         return actions;
     }
 
+    @Override
+    public int getAvailableActions(short[] actions) {
+        int remaining = dim * dim - round;
+        if (remaining > actions.length)
+            return remaining;
+        int idx = 0;
+        for (int i = 0; i < board.length; i++) {
+            if (board[i] == 0) {
+                actions[idx++] = (short) i;
+            }
+        }
+        assert idx == remaining;
+        return remaining;
+    }
+
     @Override
     public int getPreviousAgent() {
         return 3 - agent;
@@ -95,39 +128,68 @@ public class TicTacToe implements State {
 
     private byte updateWith(short action) {
         byte prevAgent = (byte) (3 - agent);
-        int row = action / dim;
-        int col = action % dim;
         round++;
         board[action] = prevAgent;
+        hash ^= zobrist(action, prevAgent);
+
+        if (isLine(action, prevAgent))
+            return prevAgent;
+
+        return round == dim * dim
+            ? DRAW
+            : NOT_OVER_YET;
+    }
+
+    // whether the agent to move wins by marking the free cell action
+    public boolean isWinningMove(short action) {
+        return isWinningMove(action, agent);
+    }
+
+    // whether the opponent of the agent to move would win by marking the free cell action
+    public boolean isBlockingMove(short action) {
+        return isWinningMove(action, (byte) (3 - agent));
+    }
+
+    private boolean isWinningMove(short action, byte player) {
+        board[action] = player;
+        boolean wins = isLine(action, player);
+        board[action] = 0;
+        return wins;
+    }
+
+    // whether the mark of player at action completes a line
+    private boolean isLine(short action, byte player) {
+        int row = action / dim;
+        int col = action % dim;
 
         int contiguous = 0;
         for (int r = 0; r < dim; r++) {
-            if (at(r, col) != prevAgent) {
+            if (at(r, col) != player) {
                 contiguous = 0;
             } else {
                 if (++contiguous == needed)
-                    return prevAgent;
+                    return true;
             }
         }
 
         contiguous = 0;
         for (int c = 0; c < dim; c++) {
-            if (at(row, c) != prevAgent) {
+            if (at(row, c) != player) {
                 contiguous = 0;
             } else {
                 if (++contiguous == needed)
-                    return prevAgent;
+                    return true;
             }
         }
 
         if (row == col) {
             contiguous = 0;
             for (int x = 0; x < dim; x++) {
-                if (at(x, x) != prevAgent) {
+                if (at(x, x) != player) {
                     contiguous = 0;
                 } else {
                     if (++contiguous == needed)
-                        return prevAgent;
+                        return true;
                 }
             }
         }
@@ -135,18 +197,29 @@ public class TicTacToe implements State {
         if (row == dim - 1 - col) {
             contiguous = 0;
             for (int x = 0; x < dim; x++) {
-                if (at(x, dim - 1 - x) != prevAgent) {
+                if (at(x, dim - 1 - x) != player) {
                     contiguous = 0;
                 } else {
                     if (++contiguous == needed)
-                        return prevAgent;
+                        return true;
                 }
             }
         }
 
-        return round == dim * dim
-            ? DRAW
-            : NOT_OVER_YET;
+        return false;
+    }
+
+    // Zobrist key of a mark, generated with splitmix64 instead of a table of random numbers
+    static long zobrist(int cell, byte agent) {
+        long z = (cell * 2L + agent) * 0x9E3779B97F4A7C15L;
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return z ^ z >>> 31;
+    }
+
+    @Override
+    public long getHash() {
+        return hash;
     }
 
     @Override
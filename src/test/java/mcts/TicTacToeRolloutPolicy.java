@@ -0,0 +1,38 @@
+package mcts;
+
+import java.util.Random;
+
+// Heavy playouts for TicTacToe: complete a line if possible, else block the opponent's,
+// else play at random.
+public class TicTacToeRolloutPolicy implements RolloutPolicy<TicTacToe> {
+    private final int maxPlies;
+
+    public TicTacToeRolloutPolicy() {
+        this(Integer.MAX_VALUE);
+    }
+
+    // rollouts cut off after maxPlies count as draws
+    public TicTacToeRolloutPolicy(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    @Override
+    public short chooseAction(TicTacToe state, short[] actions, int count, Random random) {
+        short block = -1;
+        for (int i = 0; i < count; i++) {
+            if (state.isWinningMove(actions[i]))
+                return actions[i];
+            if (block < 0 && state.isBlockingMove(actions[i]))
+                block = actions[i];
+        }
+        return block >= 0
+            ? block
+            : actions[random.nextInt(count)];
+    }
+
+    @Override
+    public int getMaxPlies() {
+        return maxPlies;
+    }
+
+}